@@ -0,0 +1,205 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+
+import androidx.webkit.WebViewAssetLoader;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BundledAssets
+ * APK 内置的首屏静态资源。构建时由 app/build.gradle 的 bundleWebAssets 任务按 app/web-assets.json
+ * 下载并校验哈希，写入 assets/web/，同时生成 URL -> 资源文件的索引（assets/web/index.json）。
+ * 运行时通过 WebViewAssetLoader 从 APK 读取，全新安装的首次启动也无需等待网络。
+ * 清单（PrefetchManifest）给出的哈希与内置版本不一致时，内置版本视为已过时，不再返回，由网络加载。
+ * 每项资源首次返回前按索引中的 sha256 校验 APK 中的内容，没有哈希或校验失败的资源不返回。
+ */
+public class BundledAssets {
+    private static final String TAG = "BundledAssets";
+
+    private static final String INDEX_ASSET = "web/index.json";
+    // WebViewAssetLoader 中 assets 目录对应的路径前缀
+    private static final String ASSETS_PATH = "/assets/";
+
+    /**
+     * 索引中的一条资源
+     */
+    static class Asset {
+        @SerializedName("url")
+        String url;
+        @SerializedName("path")
+        String path; // 相对 assets 目录，例如 web/3f2a9c0d1e4b5a67.css
+        @SerializedName("sha256")
+        String sha256;
+        @SerializedName("mime")
+        String mime;
+    }
+
+    static class Index {
+        @SerializedName("version")
+        int version;
+        @SerializedName("assets")
+        List<Asset> assets;
+    }
+
+    private final UrlCanonicalizer canonicalizer;
+    // 规范化 URL -> 资源
+    private volatile Map<String, Asset> assets = Collections.emptyMap();
+    // 清单哈希与内置版本不一致的 URL
+    private final Set<String> superseded = ConcurrentHashMap.newKeySet();
+    // 内容已通过哈希校验的 URL
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+    private volatile WebViewAssetLoader loader;
+
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong servedBytes = new AtomicLong();
+
+    public BundledAssets(UrlCanonicalizer canonicalizer) {
+        this.canonicalizer = canonicalizer;
+    }
+
+    /**
+     * 读取资源索引；APK 中没有内置资源（构建时未下载）时什么也不做
+     */
+    public synchronized void open(Context context) {
+        if (loader != null) return;
+        Context app = context.getApplicationContext();
+        Index index;
+        try (InputStream in = app.getAssets().open(INDEX_ASSET);
+             Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            index = new Gson().fromJson(reader, Index.class);
+        } catch (IOException | JsonParseException e) {
+            Log.d(TAG, "没有内置静态资源: " + e.getMessage());
+            return;
+        }
+        if (index == null || index.assets == null) return;
+
+        Map<String, Asset> map = new HashMap<>();
+        for (Asset asset : index.assets) {
+            if (asset != null && asset.url != null && asset.path != null && asset.sha256 != null) {
+                map.put(canonicalizer.canonicalize(asset.url), asset);
+            }
+        }
+        assets = map;
+        loader = new WebViewAssetLoader.Builder()
+                .addPathHandler(ASSETS_PATH, new WebViewAssetLoader.AssetsPathHandler(app))
+                .build();
+        Log.d(TAG, "内置静态资源 " + map.size() + " 项");
+    }
+
+    /**
+     * 清单给出的哈希与内置版本一致，无需下载
+     * 本类方法的 url 均为规范化后的 URL
+     */
+    public boolean matchesHash(String url, String sha256) {
+        Asset asset = assets.get(url);
+        return asset != null && asset.sha256 != null && asset.sha256.equalsIgnoreCase(sha256);
+    }
+
+    /**
+     * 内置版本的哈希；没有内置版本时返回 null
+     */
+    public String hashFor(String url) {
+        Asset asset = assets.get(url);
+        return asset != null ? asset.sha256 : null;
+    }
+
+    /**
+     * 按清单标记过时的内置资源：清单给出哈希且与内置版本不一致
+     */
+    public void applyManifest(PrefetchManifest manifest) {
+        if (manifest == null || assets.isEmpty()) return;
+        int count = 0;
+        for (PrefetchManifest.Entry entry : manifest.getEntries()) {
+            String hash = entry.getSha256();
+            String url = canonicalizer.canonicalize(entry.getUrl());
+            if (hash != null && assets.containsKey(url) && !matchesHash(url, hash)) {
+                if (superseded.add(url)) {
+                    count++;
+                }
+            }
+        }
+        if (count > 0) {
+            Log.d(TAG, "内置静态资源已过时 " + count + " 项，改由网络加载");
+        }
+    }
+
+    /**
+     * 从 APK 返回内置资源；没有内置版本或已过时返回 null
+     */
+    public WebResourceResponse serve(String url) {
+        WebViewAssetLoader assetLoader = loader;
+        if (assetLoader == null) return null;
+        Asset asset = assets.get(url);
+        if (asset == null || superseded.contains(url)) return null;
+        WebResourceResponse response = assetLoader.shouldInterceptRequest(
+                Uri.parse("https://" + WebViewAssetLoader.DEFAULT_DOMAIN + ASSETS_PATH + asset.path));
+        if (response == null || response.getData() == null) return null;
+        InputStream data = verified.contains(url) ? response.getData() : verify(url, asset, response.getData());
+        if (data == null) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        // 字体等跨域资源需要 CORS 头
+        headers.put("Access-Control-Allow-Origin", "*");
+        String mime = asset.mime != null ? asset.mime : response.getMimeType();
+        String encoding = mime != null && (mime.startsWith("text/") || mime.contains("javascript")) ? "UTF-8" : null;
+        served.incrementAndGet();
+        try {
+            servedBytes.addAndGet(data.available());
+        } catch (IOException ignored) {
+        }
+        Log.d(TAG, "WebView 命中内置资源: " + url);
+        return new WebResourceResponse(mime, encoding, 200, "OK", headers, data);
+    }
+
+    /**
+     * 读出资源内容并按索引中的哈希校验；校验通过返回内容，否则标记为过时并返回 null
+     */
+    private InputStream verify(String url, Asset asset, InputStream in) {
+        byte[] body;
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            body = out.toByteArray();
+        } catch (IOException e) {
+            Log.w(TAG, "读取内置资源失败: " + url, e);
+            return null;
+        }
+        if (!asset.sha256.equalsIgnoreCase(CachedResource.sha256Hex(body))) {
+            superseded.add(url);
+            Log.w(TAG, "内置资源哈希校验失败，改由网络加载: " + url);
+            return null;
+        }
+        verified.add(url);
+        return new ByteArrayInputStream(body);
+    }
+
+    public String describeStats() {
+        return "内置资源: " + assets.size() + " 项（过时 " + superseded.size() + "），命中 "
+                + served.get() + " 次，" + servedBytes.get() + " bytes";
+    }
+}
@@ -0,0 +1,192 @@
+package link.moely.mobile;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ByteBudgetLruCache
+ * 按字节预算（而非条目数）淘汰的 LRU 缓存。
+ * 1. 每个条目的大小由 Weigher 计算，总和不超过预算。
+ * 2. 被淘汰的条目交给 EvictionListener 处理（例如降级写入磁盘），而不是直接丢弃。
+ * 3. 统计驻留字节数、淘汰次数及命中率，便于观察内存占用。
+ */
+public class ByteBudgetLruCache<K, V> {
+
+    /**
+     * 计算条目占用的字节数
+     */
+    public interface Weigher<K, V> {
+        int weigh(K key, V value);
+    }
+
+    /**
+     * 条目因超出预算被淘汰时回调（在锁外调用）
+     */
+    public interface EvictionListener<K, V> {
+        void onEvicted(K key, V value);
+    }
+
+    // accessOrder = true，遍历顺序即最久未使用在前
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final Weigher<K, V> weigher;
+    private EvictionListener<K, V> evictionListener;
+
+    private long maxBytes;
+    private long residentBytes;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long evictedBytes;
+
+    public ByteBudgetLruCache(long maxBytes, Weigher<K, V> weigher) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0");
+        }
+        this.maxBytes = maxBytes;
+        this.weigher = weigher;
+    }
+
+    public synchronized void setEvictionListener(EvictionListener<K, V> listener) {
+        this.evictionListener = listener;
+    }
+
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return value;
+    }
+
+    /**
+     * 仅判断是否存在，不影响 LRU 顺序和命中统计
+     */
+    public synchronized boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    public void put(K key, V value) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        EvictionListener<K, V> listener;
+        synchronized (this) {
+            int size = weigher.weigh(key, value);
+            V previous = map.put(key, value);
+            if (previous != null) {
+                residentBytes -= weigher.weigh(key, previous);
+            }
+            residentBytes += size;
+            trimLocked(maxBytes, evicted);
+            listener = evictionListener;
+        }
+        notifyEvicted(listener, evicted);
+    }
+
+    public synchronized V remove(K key) {
+        V previous = map.remove(key);
+        if (previous != null) {
+            residentBytes -= weigher.weigh(key, previous);
+        }
+        return previous;
+    }
+
+    /**
+     * 调整预算，超出部分立即淘汰
+     */
+    public void setMaxBytes(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0");
+        }
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        EvictionListener<K, V> listener;
+        synchronized (this) {
+            this.maxBytes = maxBytes;
+            trimLocked(maxBytes, evicted);
+            listener = evictionListener;
+        }
+        notifyEvicted(listener, evicted);
+    }
+
+    /**
+     * 淘汰到指定字节数以下（淘汰的条目同样交给 EvictionListener）
+     */
+    public void trimToSize(long targetBytes) {
+        List<Map.Entry<K, V>> evicted = new ArrayList<>();
+        EvictionListener<K, V> listener;
+        synchronized (this) {
+            trimLocked(Math.max(0, targetBytes), evicted);
+            listener = evictionListener;
+        }
+        notifyEvicted(listener, evicted);
+    }
+
+    private void trimLocked(long targetBytes, List<Map.Entry<K, V>> evicted) {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        while (residentBytes > targetBytes && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            int size = weigher.weigh(eldest.getKey(), eldest.getValue());
+            evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest.getKey(), eldest.getValue()));
+            it.remove();
+            residentBytes -= size;
+            evictionCount++;
+            evictedBytes += size;
+        }
+    }
+
+    private void notifyEvicted(EvictionListener<K, V> listener, List<Map.Entry<K, V>> evicted) {
+        if (listener == null) return;
+        for (Map.Entry<K, V> entry : evicted) {
+            listener.onEvicted(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * 清空缓存（不触发 EvictionListener）
+     */
+    public synchronized void clear() {
+        map.clear();
+        residentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ByteBudgetLruCache[entries=" + map.size()
+                + ", resident=" + residentBytes + "/" + maxBytes
+                + ", hits=" + hitCount + ", misses=" + missCount
+                + ", evictions=" + evictionCount + " (" + evictedBytes + " bytes)]";
+    }
+}
@@ -0,0 +1,91 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CacheWarmWorker
+ * 后台缓存预热：由 WorkManager 定期调度，只在设备空闲、充电且连接不计流量的网络时运行。
+ * 重新获取预加载清单并刷新其中的资源，重新验证已缓存的主页面，最后压缩磁盘缓存
+ * （见 WebResourcePrefetcher.warmCache）。
+ * 最近一次预热成功时，下次冷启动直接使用已预热的缓存，不再在前台按清单预加载。
+ */
+public class CacheWarmWorker extends Worker {
+    private static final String TAG = "CacheWarmWorker";
+
+    private static final String UNIQUE_WORK_NAME = "moely-cache-warm";
+    private static final long INTERVAL_HOURS = 12;
+
+    // WorkManager 单次执行上限为 10 分钟，留出压缩磁盘缓存的时间
+    private static final long WARM_TIMEOUT_MS = 8 * 60 * 1000L;
+    // 距上次预热成功不足该时间时，冷启动跳过前台预加载
+    private static final long WARM_VALID_MS = 24 * 60 * 60 * 1000L;
+
+    private static final String PREFS_NAME = "MoelyCacheWarm";
+    private static final String KEY_LAST_WARM_AT = "last_warm_at";
+
+    public CacheWarmWorker(Context context, WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * 调度周期性预热；已调度时保持原计划
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.UNMETERED)
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .setRequiresStorageNotLow(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+                CacheWarmWorker.class, INTERVAL_HOURS, TimeUnit.HOURS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniquePeriodicWork(UNIQUE_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * 最近是否预热成功（缓存已是新的，冷启动无需前台预加载）
+     */
+    public static boolean isRecentlyWarmed(Context context) {
+        long lastWarmAt = prefs(context).getLong(KEY_LAST_WARM_AT, 0);
+        long age = System.currentTimeMillis() - lastWarmAt;
+        return age >= 0 && age < WARM_VALID_MS;
+    }
+
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        long start = System.currentTimeMillis();
+        Log.d(TAG, "开始后台缓存预热");
+        boolean completed = WebResourcePrefetcher.getInstance().warmCache(context, WARM_TIMEOUT_MS);
+        if (isStopped()) {
+            // 约束条件不再满足（例如拔掉充电器）：按退避策略重试，约束再次满足后执行，不必等到下一个周期
+            Log.d(TAG, "预热被中断，稍后重试");
+            return Result.retry();
+        }
+        if (completed) {
+            prefs(context).edit().putLong(KEY_LAST_WARM_AT, System.currentTimeMillis()).apply();
+        }
+        Log.d(TAG, "后台缓存预热" + (completed ? "完成" : "未全部完成") + "，耗时 "
+                + (System.currentTimeMillis() - start) + "ms");
+        return Result.success();
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
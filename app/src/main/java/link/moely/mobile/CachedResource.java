@@ -0,0 +1,308 @@
+package link.moely.mobile;
+
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import okhttp3.CacheControl;
+import okhttp3.Headers;
+import okhttp3.Response;
+
+/**
+ * CachedResource
+ * 预加载缓存中的一条资源：内容 + 来自源站响应的校验器（ETag / Last-Modified）和新鲜度，
+ * 以及内容的 SHA-256（用于和预加载清单中的哈希比对）。
+ * MIME 类型、字符集和需要回传的响应头保存在 headers 中，下载时确定，命中时直接使用。
+ * 内存缓存中的条目携带 data；从磁盘元数据恢复的条目 data 为 null，内容由磁盘映射区提供。
+ * 文本类资源可能以压缩形式保存（encoding 不为空），此时 data 为压缩后的数据，rawSize 为原始大小。
+ */
+public final class CachedResource {
+
+    // 元数据键（磁盘索引中保存）
+    private static final String META_FETCHED_AT = "fetched_at";
+    private static final String META_FRESH_UNTIL = "fresh_until";
+    private static final String META_SHA256 = "sha256";
+    private static final String META_ENCODING = "encoding";
+    private static final String META_RAW_SIZE = "raw_size";
+
+    // 没有任何新鲜度信息时的默认有效期
+    private static final long DEFAULT_FRESHNESS_MS = 10 * 60 * 1000L;
+    // 基于 Last-Modified 启发式计算的上限
+    private static final long MAX_HEURISTIC_FRESHNESS_MS = 24 * 60 * 60 * 1000L;
+
+    public final byte[] data;
+    public final ResourceHeaders headers;
+    public final String etag;
+    public final String lastModified;
+    public final long fetchedAt;
+    public final long freshUntil;
+    public final String sha256;
+    // 存储编码：null 表示原始数据，ResourceCompression.ENCODING_DEFLATE 表示压缩存储
+    public final String encoding;
+    // 解压后的原始大小
+    public final long rawSize;
+
+    private CachedResource(byte[] data, ResourceHeaders headers,
+                           long fetchedAt, long freshUntil, String sha256, String encoding, long rawSize) {
+        this.data = data;
+        this.headers = headers;
+        this.etag = headers.get("ETag");
+        this.lastModified = headers.get("Last-Modified");
+        this.fetchedAt = fetchedAt;
+        this.freshUntil = freshUntil;
+        this.sha256 = sha256;
+        this.encoding = encoding;
+        this.rawSize = rawSize;
+    }
+
+    /**
+     * 由 200 响应创建条目
+     */
+    public static CachedResource fromResponse(String url, Response response, byte[] body) {
+        return fromResponse(ResourceHeaders.fromResponse(url, response), response, body);
+    }
+
+    /**
+     * 由主页面文档的 200 响应创建条目（保留页面安全策略，不补 CORS 头）
+     */
+    public static CachedResource fromDocumentResponse(String url, Response response, byte[] body) {
+        return fromResponse(ResourceHeaders.fromDocumentResponse(url, response), response, body);
+    }
+
+    private static CachedResource fromResponse(ResourceHeaders headers, Response response, byte[] body) {
+        long now = System.currentTimeMillis();
+        return new CachedResource(
+                body,
+                headers,
+                now,
+                computeFreshUntil(response, now),
+                sha256Hex(body),
+                null,
+                body.length
+        );
+    }
+
+    /**
+     * 响应头已到达、内容仍在下载时使用的条目：只有校验器和新鲜度，没有内容和哈希
+     */
+    public static CachedResource fromResponseHeaders(String url, Response response) {
+        long now = System.currentTimeMillis();
+        return new CachedResource(
+                null,
+                ResourceHeaders.fromResponse(url, response),
+                now,
+                computeFreshUntil(response, now),
+                null,
+                null,
+                -1
+        );
+    }
+
+    /**
+     * 304 重新验证成功后刷新新鲜度，内容保持不变
+     * 按 RFC 9111 §4.3.4 用 304 中的响应头更新保存的响应头，新鲜度由合并后的响应头计算：
+     * 304 没有带 Cache-Control / Expires 时沿用原响应的 max-age，而不是退回默认有效期
+     */
+    public CachedResource revalidated(Response notModified) {
+        long now = System.currentTimeMillis();
+        ResourceHeaders merged = headers.mergeNotModified(notModified);
+        return new CachedResource(
+                data,
+                merged,
+                now,
+                computeFreshUntil(mergedHeaders(merged, notModified), now),
+                sha256,
+                encoding,
+                rawSize
+        );
+    }
+
+    /**
+     * 替换内容（例如从磁盘读入内存时）
+     */
+    public CachedResource withData(byte[] newData) {
+        return new CachedResource(newData, headers, fetchedAt, freshUntil, sha256, encoding, rawSize);
+    }
+
+    /**
+     * 存储内容的键：SHA-256 + 存储编码，内容相同的不同 URL 得到相同的键
+     * 没有哈希的旧条目退化为按 URL 区分
+     */
+    public String contentKey(String url) {
+        String digest = sha256 != null ? sha256 : "url:" + url;
+        return encoding != null ? digest + "/" + encoding : digest;
+    }
+
+    /**
+     * 尝试压缩存储（按源站声明的 MIME 类型判断）
+     * @return 压缩后的条目；不值得压缩（体积小、已是压缩格式、收益不足）时返回自身
+     */
+    public CachedResource compressedIfWorthwhile() {
+        if (encoding != null || data == null || !ResourceCompression.isCompressible(headers.mimeType)) {
+            return this;
+        }
+        byte[] compressed = ResourceCompression.compress(data);
+        if (compressed == null) return this;
+        return new CachedResource(compressed, headers, fetchedAt, freshUntil,
+                sha256, ResourceCompression.ENCODING_DEFLATE, data.length);
+    }
+
+    /**
+     * 将存储形式的数据流还原为原始内容流（压缩存储时边读边解压）
+     */
+    public InputStream decode(InputStream stored) {
+        if (ResourceCompression.ENCODING_DEFLATE.equals(encoding)) {
+            return ResourceCompression.inflatingStream(stored);
+        }
+        return stored;
+    }
+
+    /**
+     * 内容是否与给定的 SHA-256（十六进制）一致
+     */
+    public boolean matchesHash(String expectedSha256) {
+        return sha256 != null && sha256.equalsIgnoreCase(expectedSha256);
+    }
+
+    public boolean isStale(long now) {
+        return now >= freshUntil;
+    }
+
+    /**
+     * 是否带有可用于条件请求的校验器
+     */
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * 实际占用的存储字节数（压缩存储时为压缩后大小）
+     */
+    public int size() {
+        return data != null ? data.length : 0;
+    }
+
+    /**
+     * 按 RFC 9111 计算新鲜度截止时间：
+     * no-cache/no-store -> 每次都需要重新验证；
+     * max-age -> 减去 Age；
+     * Expires -> 相对 Date 计算；
+     * 只有 Last-Modified -> 启发式取 (Date - Last-Modified) 的 10%。
+     */
+    private static long computeFreshUntil(Response response, long now) {
+        return computeFreshUntil(response.headers(), now);
+    }
+
+    private static long computeFreshUntil(Headers headers, long now) {
+        CacheControl cc = CacheControl.parse(headers);
+        if (cc.noCache() || cc.noStore()) {
+            return now;
+        }
+
+        long age = 0;
+        String ageHeader = headers.get("Age");
+        if (ageHeader != null) {
+            try {
+                age = Long.parseLong(ageHeader.trim()) * 1000L;
+            } catch (NumberFormatException ignored) {
+                // 非法 Age 头按 0 处理
+            }
+        }
+
+        if (cc.maxAgeSeconds() >= 0) {
+            return now + Math.max(0, cc.maxAgeSeconds() * 1000L - age);
+        }
+
+        Date date = headers.getDate("Date");
+        long serverNow = date != null ? date.getTime() : now;
+
+        Date expires = headers.getDate("Expires");
+        if (expires != null) {
+            return now + Math.max(0, expires.getTime() - serverNow - age);
+        }
+
+        Date lastModifiedDate = headers.getDate("Last-Modified");
+        if (lastModifiedDate != null && lastModifiedDate.getTime() < serverNow) {
+            long heuristic = (serverNow - lastModifiedDate.getTime()) / 10;
+            return now + Math.min(heuristic, MAX_HEURISTIC_FRESHNESS_MS);
+        }
+
+        return now + DEFAULT_FRESHNESS_MS;
+    }
+
+    /**
+     * 合并后保存的响应头，加上 304 自身的 Date / Age（这两个头不保存，只对本次响应有效）
+     */
+    private static Headers mergedHeaders(ResourceHeaders merged, Response notModified) {
+        Headers.Builder builder = new Headers.Builder();
+        for (Map.Entry<String, String> header : merged.responseHeaders.entrySet()) {
+            builder.addUnsafeNonAscii(header.getKey(), header.getValue());
+        }
+        for (String name : new String[] {"Date", "Age"}) {
+            String value = notModified.header(name);
+            if (value != null) {
+                builder.set(name, value);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 转换为磁盘索引中保存的元数据
+     */
+    public Map<String, String> toMetadata() {
+        Map<String, String> meta = new HashMap<>();
+        headers.writeMetadata(meta);
+        meta.put(META_FETCHED_AT, Long.toString(fetchedAt));
+        meta.put(META_FRESH_UNTIL, Long.toString(freshUntil));
+        if (sha256 != null) meta.put(META_SHA256, sha256);
+        if (encoding != null) meta.put(META_ENCODING, encoding);
+        meta.put(META_RAW_SIZE, Long.toString(rawSize));
+        return meta;
+    }
+
+    /**
+     * 从磁盘元数据恢复（不含内容）
+     */
+    public static CachedResource fromMetadata(String url, Map<String, String> meta) {
+        return new CachedResource(
+                null,
+                ResourceHeaders.fromMetadata(url, meta),
+                parseLong(meta.get(META_FETCHED_AT)),
+                parseLong(meta.get(META_FRESH_UNTIL)),
+                meta.get(META_SHA256),
+                meta.get(META_ENCODING),
+                parseLong(meta.get(META_RAW_SIZE))
+        );
+    }
+
+    /**
+     * 计算 SHA-256，返回小写十六进制字符串
+     */
+    public static String sha256Hex(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Android 平台必定支持 SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
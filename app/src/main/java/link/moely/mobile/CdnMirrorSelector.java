@@ -0,0 +1,499 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * CdnMirrorSelector
+ * 公共库的 CDN 镜像选择：
+ * 1. 镜像表：cdnjs / cdnjs.loli.net / jsDelivr 上同一版本的 jquery、bootstrap、font-awesome、fancybox
+ *    互为镜像；Google Fonts 与 fonts.loli.net 互为镜像。
+ * 2. 作为 OkHttp 拦截器记录每个镜像的响应耗时（EWMA）和失败率，保存到 SharedPreferences，
+ *    下次启动后继续使用。
+ * 3. 请求时按得分选出最快的可用镜像；超过截止时间仍未返回响应头时再向第二个镜像发起请求（hedge），
+ *    先返回的为准，另一个取消。整个过程（含读取响应体）不超过调用方给出的时间预算。
+ * 镜像返回的内容不一定与源站相同，调用方需按固定的哈希校验后才能使用。
+ */
+public class CdnMirrorSelector implements Interceptor {
+    private static final String TAG = "CdnMirrorSelector";
+
+    private static final String PREFS_NAME = "MoelyMirrorHealth";
+    private static final String KEY_PREFIX = "mirror:";
+
+    // EWMA 平滑系数：新样本的权重
+    private static final double ALPHA = 0.3;
+    // 没有记录的镜像的先验耗时
+    private static final double DEFAULT_LATENCY_MS = 400;
+    // 失败率对得分的惩罚倍数
+    private static final double FAILURE_PENALTY = 4;
+    // 失败率超过该值视为不可用
+    private static final double UNHEALTHY_FAILURE_RATE = 0.5;
+    // 连续失败这么多次后暂停使用一段时间
+    private static final int COOLDOWN_FAILURES = 3;
+    private static final long COOLDOWN_MS = 5 * 60 * 1000L;
+    // 持久化的最小间隔
+    private static final long SAVE_INTERVAL_MS = 30 * 1000L;
+
+    // 发起第二个镜像请求的等待时间：首选镜像平时耗时的 2 倍，限制在该范围内
+    private static final long MIN_HEDGE_DELAY_MS = 300;
+    private static final long MAX_HEDGE_DELAY_MS = 1500;
+    // 同时进行的镜像请求数
+    private static final int MAX_PARALLEL = 2;
+
+    private static final String CDNJS = "cdnjs.cloudflare.com";
+    private static final String CDNJS_LOLI = "cdnjs.loli.net";
+    private static final String JSDELIVR = "cdn.jsdelivr.net";
+    private static final String JSDELIVR_FASTLY = "fastly.jsdelivr.net";
+
+    // 路径完全相同的镜像域名
+    private static final String[][] HOST_MIRRORS = {
+            {CDNJS, CDNJS_LOLI},
+            {JSDELIVR, JSDELIVR_FASTLY},
+            {"fonts.googleapis.com", "fonts.loli.net"},
+            {"fonts.gstatic.com", "gstatic.loli.net"},
+    };
+
+    /**
+     * cdnjs 库名与 npm 包的对应关系：
+     * cdnjs /ajax/libs/{cdnjs}/{版本}/{文件} <-> jsDelivr /npm/{npm}@{版本}/{npmPrefix}{文件}
+     */
+    private static final class Library {
+        final String cdnjsName;
+        final String npmName;
+        final String npmPrefix;
+
+        Library(String cdnjsName, String npmName, String npmPrefix) {
+            this.cdnjsName = cdnjsName;
+            this.npmName = npmName;
+            this.npmPrefix = npmPrefix;
+        }
+    }
+
+    private static final Library[] LIBRARIES = {
+            new Library("jquery", "jquery", "dist/"),
+            new Library("twitter-bootstrap", "bootstrap", "dist/"),
+            new Library("bootstrap", "bootstrap", "dist/"),
+            new Library("font-awesome", "@fortawesome/fontawesome-free", ""),
+            new Library("fancybox", "@fancyapps/fancybox", "dist/"),
+            new Library("fancyapps-ui", "@fancyapps/ui", "dist/"),
+    };
+
+    /**
+     * 一个镜像域名的健康记录
+     */
+    private static final class Health {
+        double latencyMs;
+        double failureRate;
+        int consecutiveFailures;
+        long cooldownUntil;
+
+        Health(double latencyMs, double failureRate) {
+            this.latencyMs = latencyMs;
+            this.failureRate = failureRate;
+        }
+
+        /**
+         * 序列化格式：耗时|失败率
+         */
+        String encode() {
+            return Math.round(latencyMs) + "|" + String.format(Locale.ROOT, "%.3f", failureRate);
+        }
+
+        static Health decode(String value) {
+            String[] parts = value.split("\\|");
+            if (parts.length != 2) return null;
+            try {
+                return new Health(Double.parseDouble(parts[0]), Double.parseDouble(parts[1]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 一个镜像请求的结果
+     */
+    private static final class Result {
+        final Call call;
+        final Response response;
+        final IOException error;
+
+        Result(Call call, Response response, IOException error) {
+            this.call = call;
+            this.response = response;
+            this.error = error;
+        }
+    }
+
+    private static final Set<String> TRACKED_HOSTS = new HashSet<>();
+    static {
+        for (String[] group : HOST_MIRRORS) {
+            Collections.addAll(TRACKED_HOSTS, group);
+        }
+    }
+
+    private final Map<String, Health> health = new ConcurrentHashMap<>();
+    private volatile SharedPreferences prefs;
+    private volatile OkHttpClient client;
+    private long lastSavedAt;
+
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * 设置发起镜像请求使用的客户端（客户端创建时需要先有拦截器，因此在创建后设置）
+     */
+    public void attach(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 载入上次保存的镜像健康记录
+     */
+    public void load(Context context) {
+        if (prefs != null) return;
+        SharedPreferences sp = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : sp.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(KEY_PREFIX) || !(entry.getValue() instanceof String)) continue;
+            Health h = Health.decode((String) entry.getValue());
+            if (h != null) {
+                health.putIfAbsent(entry.getKey().substring(KEY_PREFIX.length()), h);
+            }
+        }
+        prefs = sp;
+        Log.d(TAG, "已载入镜像记录 " + health.size() + " 项");
+    }
+
+    /**
+     * 记录经过客户端的每个镜像请求的耗时和结果；被取消的请求（hedge 落败方）不计入
+     */
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String host = request.url().host();
+        if (!TRACKED_HOSTS.contains(host)) {
+            return chain.proceed(request);
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Response response = chain.proceed(request);
+            if (response.code() >= 500) {
+                recordFailure(host);
+            } else {
+                recordSuccess(host, System.currentTimeMillis() - start);
+            }
+            return response;
+        } catch (IOException e) {
+            if (!chain.call().isCanceled()) {
+                recordFailure(host);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 与该 URL 内容相同的所有镜像 URL（含自身，自身在前）；不是已知镜像时只有自身
+     */
+    public static List<String> candidatesFor(String url) {
+        List<String> candidates = new ArrayList<>();
+        candidates.add(url);
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null || !"https".equals(parsed.scheme())) return candidates;
+
+        String host = parsed.host();
+        String path = parsed.encodedPath();
+        String query = parsed.encodedQuery() != null ? "?" + parsed.encodedQuery() : "";
+
+        String alternate = null;
+        if ((host.equals(CDNJS) || host.equals(CDNJS_LOLI)) && path.startsWith("/ajax/libs/")) {
+            alternate = cdnjsToJsdelivr(path.substring("/ajax/libs/".length()));
+        } else if ((host.equals(JSDELIVR) || host.equals(JSDELIVR_FASTLY)) && path.startsWith("/npm/")) {
+            alternate = jsdelivrToCdnjs(path.substring("/npm/".length()));
+        }
+
+        for (String[] group : HOST_MIRRORS) {
+            for (String mirrorHost : group) {
+                if (!mirrorHost.equals(host)) continue;
+                for (String other : group) {
+                    if (!other.equals(host)) candidates.add("https://" + other + path + query);
+                }
+            }
+        }
+        if (alternate != null) {
+            HttpUrl alt = HttpUrl.parse(alternate);
+            candidates.add(alternate + query);
+            for (String[] group : HOST_MIRRORS) {
+                if (alt == null || !group[0].equals(alt.host())) continue;
+                for (int i = 1; i < group.length; i++) {
+                    candidates.add("https://" + group[i] + alt.encodedPath() + query);
+                }
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * {cdnjs}/{版本}/{文件} -> jsDelivr URL，不在镜像表中时返回 null
+     */
+    private static String cdnjsToJsdelivr(String rest) {
+        String[] parts = rest.split("/", 3);
+        if (parts.length != 3) return null;
+        for (Library lib : LIBRARIES) {
+            if (lib.cdnjsName.equals(parts[0])) {
+                return "https://" + JSDELIVR + "/npm/" + lib.npmName + "@" + parts[1] + "/" + lib.npmPrefix + parts[2];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {npm}@{版本}/{路径} -> cdnjs URL，不在镜像表中或路径不对应时返回 null
+     */
+    private static String jsdelivrToCdnjs(String rest) {
+        for (Library lib : LIBRARIES) {
+            String prefix = lib.npmName + "@";
+            if (!rest.startsWith(prefix)) continue;
+            int slash = rest.indexOf('/', prefix.length());
+            if (slash < 0) return null;
+            String version = rest.substring(prefix.length(), slash);
+            String file = rest.substring(slash + 1);
+            if (version.isEmpty() || !file.startsWith(lib.npmPrefix)) continue;
+            return "https://" + CDNJS + "/ajax/libs/" + lib.cdnjsName + "/" + version + "/"
+                    + file.substring(lib.npmPrefix.length());
+        }
+        return null;
+    }
+
+    /**
+     * 按得分排序（耗时越低、失败越少越靠前），不可用的镜像排在最后
+     */
+    public List<String> rank(List<String> candidates) {
+        List<String> ranked = new ArrayList<>(candidates);
+        long now = System.currentTimeMillis();
+        Map<String, Double> scores = new HashMap<>();
+        for (String url : ranked) {
+            HttpUrl parsed = HttpUrl.parse(url);
+            scores.put(url, parsed != null ? score(parsed.host(), now) : Double.MAX_VALUE);
+        }
+        // 稳定排序，得分相同时保留原始 URL 在前
+        Collections.sort(ranked, (a, b) -> Double.compare(scores.get(a), scores.get(b)));
+        return ranked;
+    }
+
+    /**
+     * 预加载时使用的 URL：得分最高的镜像
+     */
+    public String preferredUrl(String url) {
+        List<String> candidates = candidatesFor(url);
+        return candidates.size() > 1 ? rank(candidates).get(0) : url;
+    }
+
+    /**
+     * 按排序后的镜像依次请求：首选镜像超过截止时间未返回、或请求失败时启用下一个，
+     * 最多同时 MAX_PARALLEL 个，第一个成功的响应为准，其余取消
+     * 注意：阻塞等待，只能在后台线程调用；调用方负责关闭返回的响应
+     * @param ranked rank 排序后的候选 URL
+     * @param budgetMs 时间预算：超时未返回响应头时抛出 IOException，读取响应体也在预算截止时失败
+     */
+    public Response fetch(List<String> ranked, long budgetMs) throws IOException {
+        OkHttpClient c = client;
+        if (c == null || ranked.isEmpty()) throw new IOException("镜像客户端未初始化");
+
+        BlockingQueue<Result> results = new LinkedBlockingQueue<>();
+        List<Call> calls = new ArrayList<>();
+        Object lock = new Object();
+        boolean[] settled = {false};
+
+        long start = System.currentTimeMillis();
+        long deadline = start + budgetMs;
+        long hedgeAt = start + hedgeDelayMs(ranked.get(0));
+        int started = 0;
+        int running = 0;
+        Result winner = null;
+        IOException lastError = null;
+
+        try {
+            calls.add(start(c, ranked.get(started++), deadline, results, lock, settled));
+            running++;
+            while (winner == null) {
+                long now = System.currentTimeMillis();
+                if (now >= deadline) break;
+                boolean canHedge = started < ranked.size() && running < MAX_PARALLEL;
+                long waitUntil = canHedge ? Math.min(hedgeAt, deadline) : deadline;
+                Result result = results.poll(Math.max(0, waitUntil - now), TimeUnit.MILLISECONDS);
+                if (result == null) {
+                    if (canHedge && System.currentTimeMillis() >= hedgeAt) {
+                        Log.d(TAG, "首选镜像超时，同时请求: " + ranked.get(started));
+                        hedgedRequests.incrementAndGet();
+                        calls.add(start(c, ranked.get(started++), deadline, results, lock, settled));
+                        running++;
+                    }
+                    continue;
+                }
+                running--;
+                if (result.response != null && result.response.isSuccessful()) {
+                    winner = result;
+                    break;
+                }
+                if (result.response != null) {
+                    lastError = new IOException("镜像响应错误 " + result.response.code() + ": "
+                            + result.call.request().url());
+                    result.response.close();
+                } else {
+                    lastError = result.error;
+                }
+                // 失败时立即启用下一个镜像
+                if (started < ranked.size()) {
+                    calls.add(start(c, ranked.get(started++), deadline, results, lock, settled));
+                    running++;
+                } else if (running == 0) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            lastError = new IOException("镜像请求被中断", e);
+        } finally {
+            synchronized (lock) {
+                settled[0] = true;
+            }
+            // 胜出的请求还要读取响应体，不能取消
+            for (Call call : calls) {
+                if (winner == null || call != winner.call) call.cancel();
+            }
+            Result leftover;
+            while ((leftover = results.poll()) != null) {
+                if (leftover.response != null) leftover.response.close();
+            }
+        }
+
+        if (winner == null) {
+            throw lastError != null ? lastError : new IOException("镜像请求超时");
+        }
+        if (winner.call != calls.get(0)) {
+            hedgeWins.incrementAndGet();
+        }
+        return winner.response;
+    }
+
+    public String describeStats() {
+        return "镜像: 同时请求 " + hedgedRequests.get() + " 次，备用镜像胜出 " + hedgeWins.get() + " 次";
+    }
+
+    private Call start(OkHttpClient c, String url, long deadline, BlockingQueue<Result> results,
+                       Object lock, boolean[] settled) {
+        Call call = c.newCall(new Request.Builder().url(url).build());
+        // 调用超时覆盖整个请求，包括调用方读取响应体
+        call.timeout().deadline(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                synchronized (lock) {
+                    if (!settled[0]) results.offer(new Result(call, null, e));
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                synchronized (lock) {
+                    if (!settled[0]) {
+                        results.offer(new Result(call, response, null));
+                        return;
+                    }
+                }
+                response.close();
+            }
+        });
+        return call;
+    }
+
+    private long hedgeDelayMs(String url) {
+        HttpUrl parsed = HttpUrl.parse(url);
+        Health h = parsed != null ? health.get(parsed.host()) : null;
+        double latency = h != null ? h.latencyMs : DEFAULT_LATENCY_MS;
+        return Math.max(MIN_HEDGE_DELAY_MS, Math.min(MAX_HEDGE_DELAY_MS, Math.round(latency * 2)));
+    }
+
+    private double score(String host, long now) {
+        Health h = health.get(host);
+        if (h == null) return DEFAULT_LATENCY_MS;
+        synchronized (h) {
+            if (now < h.cooldownUntil || h.failureRate > UNHEALTHY_FAILURE_RATE) {
+                // 不可用的镜像仍可作为最后的备选
+                return Double.MAX_VALUE / 2 + h.latencyMs;
+            }
+            return h.latencyMs * (1 + FAILURE_PENALTY * h.failureRate);
+        }
+    }
+
+    private void recordSuccess(String host, long elapsedMs) {
+        Health h = health.computeIfAbsent(host, k -> new Health(elapsedMs, 0));
+        synchronized (h) {
+            h.latencyMs += ALPHA * (elapsedMs - h.latencyMs);
+            h.failureRate *= 1 - ALPHA;
+            h.consecutiveFailures = 0;
+            h.cooldownUntil = 0;
+        }
+        save(false);
+    }
+
+    private void recordFailure(String host) {
+        Health h = health.computeIfAbsent(host, k -> new Health(DEFAULT_LATENCY_MS, 0));
+        synchronized (h) {
+            h.failureRate += ALPHA * (1 - h.failureRate);
+            h.consecutiveFailures++;
+            if (h.consecutiveFailures >= COOLDOWN_FAILURES) {
+                h.cooldownUntil = System.currentTimeMillis() + COOLDOWN_MS;
+                Log.w(TAG, "镜像连续失败，暂停使用: " + host);
+            }
+        }
+        save(true);
+    }
+
+    /**
+     * 写回 SharedPreferences；成功样本按间隔合并写入，失败立即写入
+     */
+    private void save(boolean force) {
+        SharedPreferences sp = prefs;
+        if (sp == null) return;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (!force && now - lastSavedAt < SAVE_INTERVAL_MS) return;
+            lastSavedAt = now;
+        }
+        SharedPreferences.Editor editor = sp.edit();
+        for (Map.Entry<String, Health> entry : health.entrySet()) {
+            String encoded;
+            synchronized (entry.getValue()) {
+                encoded = entry.getValue().encode();
+            }
+            editor.putString(KEY_PREFIX + entry.getKey(), encoded);
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,239 @@
+package link.moely.mobile;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConnectivityMonitor
+ * 通过 ConnectivityManager.NetworkCallback 跟踪默认网络是否可用，网络断开和恢复时通知监听者。
+ * 默认网络具备 NET_CAPABILITY_INTERNET 即视为在线：系统联网验证（NET_CAPABILITY_VALIDATED）
+ * 依赖的探测地址在部分地区无法访问，切换网络时也会短暂缺失，不能作为离线的依据。
+ * 未通过验证的网络上，实际请求连续失败（reportRequestFailure）才进入离线，一段时间后自动恢复再试；
+ * 已通过验证的网络上请求失败视为个别服务器的问题，不改变在线状态。回调在系统网络线程执行。
+ * 同时根据网络能力和流量节省设置计算 NetworkPolicy，策略变化时通知策略监听者。
+ */
+public class ConnectivityMonitor {
+    private static final String TAG = "ConnectivityMonitor";
+
+    // 未通过验证的网络上，连续请求失败达到该次数才进入离线
+    private static final int FAILURES_BEFORE_OFFLINE = 3;
+    // 因请求失败进入离线后，隔这么久恢复在线再试
+    private static final long FAILURE_RETRY_MS = 30 * 1000L;
+
+    /**
+     * 网络状态变化回调
+     */
+    public interface Listener {
+        void onConnectivityChanged(boolean online);
+    }
+
+    /**
+     * 网络策略变化回调
+     */
+    public interface PolicyListener {
+        void onPolicyChanged(NetworkPolicy policy);
+    }
+
+    private static volatile ConnectivityMonitor instance;
+
+    private final ConnectivityManager connectivityManager;
+    private final Context appContext;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<PolicyListener> policyListeners = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private volatile boolean online = true;
+    // 默认网络具备 NET_CAPABILITY_INTERNET
+    private volatile boolean networkAvailable = true;
+    // 默认网络已通过系统联网验证（仅作参考）
+    private volatile boolean validated;
+    // 因实际请求连续失败而进入离线
+    private volatile boolean failedOffline;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile NetworkPolicy policy = NetworkPolicy.DEFAULT;
+    private volatile NetworkCapabilities lastCapabilities;
+    private boolean started;
+
+    private final ConnectivityManager.NetworkCallback networkCallback = new ConnectivityManager.NetworkCallback() {
+        @Override
+        public void onCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+            lastCapabilities = capabilities;
+            setNetwork(hasInternet(capabilities), isValidated(capabilities));
+            updatePolicy();
+        }
+
+        @Override
+        public void onLost(Network network) {
+            setNetwork(false, false);
+        }
+
+        @Override
+        public void onUnavailable() {
+            setNetwork(false, false);
+        }
+    };
+
+    // 因请求失败进入离线后，到时恢复在线再试
+    private final Runnable failureRetry = () -> {
+        if (!failedOffline) return;
+        failedOffline = false;
+        consecutiveFailures.set(0);
+        Log.d(TAG, "离线已持续 " + FAILURE_RETRY_MS + "ms，恢复在线重试");
+        refresh();
+    };
+
+    // 用户在系统设置中开关流量节省（Data Saver）时重新计算策略
+    private final BroadcastReceiver restrictBackgroundReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            updatePolicy();
+        }
+    };
+
+    private ConnectivityMonitor(Context context) {
+        this.appContext = context.getApplicationContext();
+        this.connectivityManager = (ConnectivityManager) appContext
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    public static ConnectivityMonitor getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ConnectivityMonitor.class) {
+                if (instance == null) {
+                    instance = new ConnectivityMonitor(context);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 开始监听默认网络（只注册一次）
+     */
+    public synchronized void start() {
+        if (started || connectivityManager == null) return;
+        started = true;
+        Network active = connectivityManager.getActiveNetwork();
+        lastCapabilities = active != null ? connectivityManager.getNetworkCapabilities(active) : null;
+        networkAvailable = hasInternet(lastCapabilities);
+        validated = isValidated(lastCapabilities);
+        online = networkAvailable;
+        policy = NetworkPolicy.evaluate(connectivityManager, lastCapabilities);
+        connectivityManager.registerDefaultNetworkCallback(networkCallback);
+        appContext.registerReceiver(restrictBackgroundReceiver,
+                new IntentFilter(ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED));
+        Log.d(TAG, "开始监听网络状态，当前" + (online ? "在线" : "离线") + ", " + policy);
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public NetworkPolicy getPolicy() {
+        return policy;
+    }
+
+    public void addPolicyListener(PolicyListener listener) {
+        policyListeners.add(listener);
+    }
+
+    public void removePolicyListener(PolicyListener listener) {
+        policyListeners.remove(listener);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 实际请求成功：网络可用
+     */
+    public void reportRequestSuccess() {
+        consecutiveFailures.set(0);
+        if (failedOffline) {
+            failedOffline = false;
+            handler.removeCallbacks(failureRetry);
+            refresh();
+        }
+    }
+
+    /**
+     * 实际请求因连接问题失败（DNS 解析、连接、超时，不含主动取消）
+     * 只在未通过验证的网络上计数，连续失败达到阈值时进入离线
+     */
+    public void reportRequestFailure() {
+        if (!networkAvailable || validated || failedOffline) return;
+        if (consecutiveFailures.incrementAndGet() < FAILURES_BEFORE_OFFLINE) return;
+        failedOffline = true;
+        Log.d(TAG, "网络未通过验证且请求连续失败，进入离线模式");
+        refresh();
+        handler.postDelayed(failureRetry, FAILURE_RETRY_MS);
+    }
+
+    private void setNetwork(boolean available, boolean isValidated) {
+        if (available != networkAvailable || isValidated) {
+            // 换了网络或网络已通过验证，之前的失败不再有参考价值
+            consecutiveFailures.set(0);
+            if (failedOffline) {
+                failedOffline = false;
+                handler.removeCallbacks(failureRetry);
+            }
+        }
+        networkAvailable = available;
+        validated = isValidated;
+        refresh();
+    }
+
+    private void refresh() {
+        update(networkAvailable && !failedOffline);
+    }
+
+    private void update(boolean nowOnline) {
+        // 网络回调、请求线程和主线程都可能调用，只让状态真正变化的那一次通知监听者
+        synchronized (this) {
+            if (online == nowOnline) return;
+            online = nowOnline;
+        }
+        Log.d(TAG, nowOnline ? "网络已恢复" : "网络已断开，进入离线模式");
+        for (Listener listener : listeners) {
+            listener.onConnectivityChanged(nowOnline);
+        }
+    }
+
+    private synchronized void updatePolicy() {
+        NetworkCapabilities capabilities = lastCapabilities;
+        if (capabilities == null) return;
+        NetworkPolicy newPolicy = NetworkPolicy.evaluate(connectivityManager, capabilities);
+        if (newPolicy.equals(policy)) return;
+        policy = newPolicy;
+        Log.d(TAG, "网络策略已变化: " + newPolicy);
+        for (PolicyListener listener : policyListeners) {
+            listener.onPolicyChanged(newPolicy);
+        }
+    }
+
+    private static boolean hasInternet(NetworkCapabilities capabilities) {
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+    }
+
+    private static boolean isValidated(NetworkCapabilities capabilities) {
+        return capabilities != null
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
+    }
+}
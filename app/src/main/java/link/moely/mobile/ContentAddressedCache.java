@@ -0,0 +1,213 @@
+package link.moely.mobile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * ContentAddressedCache
+ * 按内容寻址的内存缓存：资源内容以 SHA-256（+ 存储编码）为键保存在按字节预算淘汰的 LRU 中，
+ * 上层是 URL -> 条目（不含内容）的索引。
+ * 同一个库经不同 CDN 镜像或带不同版本参数的 URL 下载到相同内容时，内存中只保存一份；
+ * 重新验证返回相同内容时也不占用额外空间。
+ * 内容被淘汰时，引用它的每个 URL 都交给 EvictionListener（例如降级写入磁盘）。
+ */
+public class ContentAddressedCache {
+
+    // 内容键 -> 存储形式的数据（压缩存储时为压缩后的数据）
+    private final ByteBudgetLruCache<String, byte[]> payloads;
+
+    // 以下两项由 this 保护
+    // URL -> 条目（data 为 null）
+    private final Map<String, CachedResource> entries = new HashMap<>();
+    // 内容键 -> 引用该内容的 URL
+    private final Map<String, Set<String>> references = new HashMap<>();
+
+    private volatile ByteBudgetLruCache.EvictionListener<String, CachedResource> evictionListener;
+
+    private long dedupHits;
+    private long dedupBytes;
+
+    public ContentAddressedCache(long maxBytes) {
+        this.payloads = new ByteBudgetLruCache<>(maxBytes, (key, data) -> data.length);
+        this.payloads.setEvictionListener(this::onPayloadEvicted);
+    }
+
+    public void setEvictionListener(ByteBudgetLruCache.EvictionListener<String, CachedResource> listener) {
+        this.evictionListener = listener;
+    }
+
+    /**
+     * @return 带内容的条目，未命中时返回 null
+     */
+    public CachedResource get(String url) {
+        CachedResource entry;
+        synchronized (this) {
+            entry = entries.get(url);
+        }
+        if (entry == null) return null;
+        byte[] payload = payloads.get(entry.contentKey(url));
+        return payload != null ? entry.withData(payload) : null;
+    }
+
+    /**
+     * 仅判断是否存在，不影响 LRU 顺序和命中统计
+     */
+    public boolean containsKey(String url) {
+        CachedResource entry;
+        synchronized (this) {
+            entry = entries.get(url);
+        }
+        return entry != null && payloads.containsKey(entry.contentKey(url));
+    }
+
+    /**
+     * 保存条目；内容已存在时只更新 URL 索引
+     */
+    public void put(String url, CachedResource entry) {
+        String key = entry.contentKey(url);
+        synchronized (this) {
+            CachedResource previous = entries.put(url, entry.withData(null));
+            if (previous != null) {
+                String previousKey = previous.contentKey(url);
+                if (!previousKey.equals(key)) {
+                    release(url, previousKey);
+                }
+            }
+            Set<String> urls = references.get(key);
+            if (urls == null) {
+                urls = new HashSet<>();
+                references.put(key, urls);
+            }
+            urls.add(url);
+            if (payloads.get(key) != null) {
+                if (previous == null || !previous.contentKey(url).equals(key)) {
+                    dedupHits++;
+                    dedupBytes += entry.size();
+                }
+                return;
+            }
+        }
+        payloads.put(key, entry.data);
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        payloads.setMaxBytes(maxBytes);
+    }
+
+    public long getMaxBytes() {
+        return payloads.getMaxBytes();
+    }
+
+    public long getResidentBytes() {
+        return payloads.getResidentBytes();
+    }
+
+    /**
+     * 淘汰到指定字节数以下（被淘汰的 URL 交给 EvictionListener）
+     * @return 释放的字节数
+     */
+    public long trimToSize(long targetBytes) {
+        long before = payloads.getResidentBytes();
+        payloads.trimToSize(targetBytes);
+        return Math.max(0, before - payloads.getResidentBytes());
+    }
+
+    /**
+     * 移除满足条件的 URL（不触发 EvictionListener），内容不再被引用时一并释放
+     * filter 在锁内调用，不应执行耗时操作
+     * @return 释放的字节数
+     */
+    public long removeIf(BiPredicate<String, CachedResource> filter) {
+        long before = payloads.getResidentBytes();
+        synchronized (this) {
+            Iterator<Map.Entry<String, CachedResource>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, CachedResource> entry = it.next();
+                if (filter.test(entry.getKey(), entry.getValue())) {
+                    it.remove();
+                    release(entry.getKey(), entry.getValue().contentKey(entry.getKey()));
+                }
+            }
+        }
+        return Math.max(0, before - payloads.getResidentBytes());
+    }
+
+    public long getEvictionCount() {
+        return payloads.getEvictionCount();
+    }
+
+    /**
+     * 因内容相同而未重复保存的字节数
+     */
+    public synchronized long getDedupBytes() {
+        return dedupBytes;
+    }
+
+    /**
+     * 清空缓存（不触发 EvictionListener）
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            references.clear();
+        }
+        payloads.clear();
+    }
+
+    /**
+     * URL 不再引用该内容；没有任何引用时释放内容
+     */
+    private void release(String url, String key) {
+        Set<String> urls = references.get(key);
+        if (urls == null) return;
+        urls.remove(url);
+        if (urls.isEmpty()) {
+            references.remove(key);
+            payloads.remove(key);
+        }
+    }
+
+    /**
+     * 内容被淘汰：移除所有引用它的 URL，并逐个通知（在锁外调用）
+     */
+    private void onPayloadEvicted(String key, byte[] payload) {
+        List<String> evictedUrls = new ArrayList<>();
+        List<CachedResource> evictedEntries = new ArrayList<>();
+        synchronized (this) {
+            Set<String> urls = references.remove(key);
+            if (urls == null) return;
+            for (String url : urls) {
+                CachedResource entry = entries.remove(url);
+                if (entry != null) {
+                    evictedUrls.add(url);
+                    evictedEntries.add(entry.withData(payload));
+                }
+            }
+        }
+        ByteBudgetLruCache.EvictionListener<String, CachedResource> listener = evictionListener;
+        if (listener == null) return;
+        for (int i = 0; i < evictedUrls.size(); i++) {
+            listener.onEvicted(evictedUrls.get(i), evictedEntries.get(i));
+        }
+    }
+
+    @Override
+    public String toString() {
+        int urls;
+        long hits;
+        long bytes;
+        synchronized (this) {
+            urls = entries.size();
+            hits = dedupHits;
+            bytes = dedupBytes;
+        }
+        return "ContentAddressedCache[urls=" + urls + ", payloads=" + payloads
+                + ", dedup=" + hits + " (" + bytes + " bytes)]";
+    }
+}
@@ -0,0 +1,643 @@
+package link.moely.mobile;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DiskResourceCache
+ * 预加载资源的磁盘缓存层，进程被杀后依然有效。
+ * 存储结构：
+ * 1. blob 文件：所有资源内容依次追加写入，从不原地修改。
+ * 2. 索引文件：追加写入 URL -> (偏移, 长度, 元数据) 记录，同一 URL 以最后一条为准。
+ * 读取时整体映射 blob 文件（MappedByteBuffer），命中时返回映射区的切片，不产生 byte[] 拷贝。
+ * blob 文件按块预先扩展并映射整个已分配区域，写入落在已映射的范围内，只有跨过块边界时才重新映射。
+ * 写入时可以带上内容键（内容哈希）：blob 中已有相同内容时多个 URL 指向同一段数据，不重复写入。
+ * 被覆盖的旧数据和旧索引记录由 compact 重写回收（后台缓存预热时执行）；写入将超出字节上限时，
+ * 先按最近访问时间淘汰最久未用的键，再压缩。
+ */
+public class DiskResourceCache {
+    private static final String TAG = "DiskResourceCache";
+
+    private static final String BLOB_FILE_NAME = "resources.blob";
+    private static final String INDEX_FILE_NAME = "resources.idx";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    // 默认字节上限
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    // blob 文件每次扩展的大小
+    private static final long GROW_CHUNK_BYTES = 4L * 1024 * 1024;
+
+    // 索引文件头，版本不一致时直接丢弃旧缓存
+    private static final int INDEX_MAGIC = 0x4D4F4C59; // "MOLY"
+    private static final int INDEX_VERSION = 2;
+
+    // 内容键保存在元数据中，回放索引时据此重建内容 -> 位置的映射
+    private static final String META_CONTENT_KEY = "content_key";
+
+    private final File directory;
+    private final File blobFile;
+    private final File indexFile;
+    private final long maxBytes;
+
+    private long dedupBytes;
+    private long evictionCount;
+    // 访问顺序，用于淘汰最久未用的键
+    private final AtomicLong accessClock = new AtomicLong();
+
+    private RandomAccessFile blobAccess;
+    private FileChannel blobChannel;
+    private DataOutputStream indexOut;
+    // 已写入的数据长度（下次写入的位置）
+    private long blobLength;
+    // blob 文件实际长度（已预先扩展、已映射的区域）
+    private long allocatedLength;
+
+    // 当前这一代文件，open 时发布；读取时只读一次，位置和映射总是来自同一代
+    private volatile Generation generation = new Generation();
+
+    /**
+     * 一代缓存文件：索引中的位置只对同一代的映射有效。
+     * compact / clear 重写文件后发布新的一代，而不是原地清空索引、替换映射，
+     * 读取方不会把旧文件的位置套用到新文件的映射上。
+     */
+    private static final class Generation {
+        // URL -> blob 中的位置
+        final Map<String, Slot> index = new ConcurrentHashMap<>();
+        // 内容键 -> blob 中的位置（由 DiskResourceCache.this 保护）
+        final Map<String, Slot> contentSlots = new HashMap<>();
+        // 本代 blob 已分配区域的只读映射，文件扩展后重新映射
+        volatile MappedByteBuffer mapped;
+    }
+
+    /**
+     * 同一条记录的内容和元数据
+     */
+    public static final class Entry {
+        // 指向映射区的只读切片（独立 position）
+        public final ByteBuffer data;
+        public final Map<String, String> metadata;
+
+        Entry(ByteBuffer data, Map<String, String> metadata) {
+            this.data = data;
+            this.metadata = metadata;
+        }
+    }
+
+    /**
+     * blob 中的一段数据
+     */
+    private static final class Slot {
+        final long offset;
+        final int length;
+        final Map<String, String> metadata;
+        // 最近一次读取或写入的顺序号
+        volatile long lastAccess;
+
+        Slot(long offset, int length, Map<String, String> metadata, long lastAccess) {
+            this.offset = offset;
+            this.length = length;
+            this.metadata = metadata;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    public DiskResourceCache(File directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes blob 文件中数据的字节上限，单个资源超过其一半时不缓存
+     */
+    public DiskResourceCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.blobFile = new File(directory, BLOB_FILE_NAME);
+        this.indexFile = new File(directory, INDEX_FILE_NAME);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 打开（或新建）缓存文件并回放索引
+     */
+    public synchronized void open() throws IOException {
+        if (blobChannel != null) return;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("无法创建缓存目录: " + directory);
+        }
+
+        blobAccess = new RandomAccessFile(blobFile, "rw");
+        blobChannel = blobAccess.getChannel();
+        allocatedLength = blobChannel.size();
+        // 回放索引时取最后一段数据的结尾，之后的预分配区域从这里继续写入
+        blobLength = 0;
+
+        Generation gen = new Generation();
+        long validIndexLength = loadIndex(gen);
+        if (validIndexLength < 0) {
+            // 索引缺失或版本不符，重置整个缓存
+            gen = new Generation();
+            blobChannel.truncate(0);
+            allocatedLength = 0;
+            blobLength = 0;
+            indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, false)));
+            indexOut.writeInt(INDEX_MAGIC);
+            indexOut.writeInt(INDEX_VERSION);
+            indexOut.flush();
+        } else {
+            // 截掉尾部不完整的记录后继续追加
+            try (RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+                raf.setLength(validIndexLength);
+            }
+            indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+        }
+
+        mapLocked(gen);
+        generation = gen;
+        Log.d(TAG, "磁盘缓存已打开: " + gen.index.size() + " 条记录, " + blobLength + " bytes");
+    }
+
+    /**
+     * 回放索引文件
+     * @return 有效索引的字节长度；索引不可用时返回 -1
+     */
+    private long loadIndex(Generation gen) {
+        if (!indexFile.exists() || indexFile.length() < 8) return -1;
+
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                Log.w(TAG, "索引版本不匹配，丢弃旧缓存");
+                return -1;
+            }
+            validLength = 8;
+            // 每条记录以长度为前缀，尾部被截断的记录读取时直接丢弃
+            while (true) {
+                byte[] record;
+                try {
+                    int recordLength = in.readInt();
+                    if (recordLength <= 0) break;
+                    record = new byte[recordLength];
+                    in.readFully(record);
+                } catch (EOFException eof) {
+                    break; // 正常结束或尾部记录被截断
+                }
+                DataInputStream recordIn = new DataInputStream(new ByteArrayInputStream(record));
+                String url = recordIn.readUTF();
+                long offset = recordIn.readLong();
+                int length = recordIn.readInt();
+                Map<String, String> metadata = readMetadata(recordIn);
+                // 写 blob 后进程被杀可能留下越界记录，直接跳过
+                if (offset >= 0 && length >= 0 && offset + length <= allocatedLength) {
+                    // 按记录顺序近似访问顺序
+                    Slot slot = new Slot(offset, length, metadata, accessClock.incrementAndGet());
+                    blobLength = Math.max(blobLength, offset + length);
+                    gen.index.put(url, slot);
+                    String contentKey = metadata.get(META_CONTENT_KEY);
+                    if (contentKey != null) {
+                        gen.contentSlots.put(contentKey, slot);
+                    }
+                }
+                validLength += 4 + record.length;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "读取索引失败，丢弃旧缓存", e);
+            return -1;
+        }
+        return validLength;
+    }
+
+    private static Map<String, String> readMetadata(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) return Collections.emptyMap();
+        Map<String, String> metadata = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            metadata.put(in.readUTF(), in.readUTF());
+        }
+        return Collections.unmodifiableMap(metadata);
+    }
+
+    private void appendIndexRecord(String url, long offset, int length, Map<String, String> metadata)
+            throws IOException {
+        writeIndexRecord(indexOut, url, offset, length, metadata);
+        indexOut.flush();
+    }
+
+    private static void writeIndexRecord(DataOutputStream out, String url, long offset, int length,
+                                         Map<String, String> metadata) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeUTF(url);
+        record.writeLong(offset);
+        record.writeInt(length);
+        record.writeInt(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            record.writeUTF(entry.getKey());
+            record.writeUTF(entry.getValue());
+        }
+        record.flush();
+
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+    }
+
+    /**
+     * 映射整个已分配区域（调用方持有 this，gen 为当前打开的这一代）
+     */
+    private void mapLocked(Generation gen) throws IOException {
+        if (blobChannel == null || allocatedLength == 0) {
+            gen.mapped = null;
+            return;
+        }
+        gen.mapped = blobChannel.map(FileChannel.MapMode.READ_ONLY, 0, allocatedLength);
+    }
+
+    /**
+     * 保证 blob 文件至少有 needed 字节，不够时按块扩展并重新映射
+     */
+    private void ensureCapacityLocked(Generation gen, long needed) throws IOException {
+        if (needed <= allocatedLength && gen.mapped != null) return;
+        long chunk = Math.min(GROW_CHUNK_BYTES, maxBytes);
+        long newLength = Math.max(allocatedLength, (needed + chunk - 1) / chunk * chunk);
+        blobAccess.setLength(newLength);
+        allocatedLength = newLength;
+        mapLocked(gen);
+    }
+
+    /**
+     * 读取方发现映射不够长时调用；gen 已被替换（压缩或清空）时不再重新映射
+     */
+    private synchronized MappedByteBuffer remap(Generation gen) {
+        if (gen != generation || blobChannel == null) return gen.mapped;
+        try {
+            mapLocked(gen);
+        } catch (IOException e) {
+            Log.e(TAG, "重新映射失败", e);
+        }
+        return gen.mapped;
+    }
+
+    public boolean contains(String url) {
+        return generation.index.containsKey(url);
+    }
+
+    /**
+     * 获取资源内容
+     * @return 指向映射区的只读切片（独立 position），未命中时返回 null
+     */
+    public ByteBuffer get(String url) {
+        Generation gen = generation;
+        Slot slot = gen.index.get(url);
+        return slot != null ? read(gen, slot) : null;
+    }
+
+    /**
+     * 获取资源内容和元数据：两者取自同一条记录，不会在两次查找之间被并发写入替换成不同版本
+     * @return 未命中时返回 null
+     */
+    public Entry getEntry(String url) {
+        Generation gen = generation;
+        Slot slot = gen.index.get(url);
+        if (slot == null) return null;
+        ByteBuffer data = read(gen, slot);
+        return data != null ? new Entry(data, slot.metadata) : null;
+    }
+
+    private ByteBuffer read(Generation gen, Slot slot) {
+        MappedByteBuffer current = gen.mapped;
+        if (current == null || slot.offset + slot.length > current.capacity()) {
+            // 写入前已扩展并映射，理论上不会发生，此处兜底
+            current = remap(gen);
+            if (current == null || slot.offset + slot.length > current.capacity()) return null;
+        }
+        slot.lastAccess = accessClock.incrementAndGet();
+
+        ByteBuffer view = current.duplicate();
+        view.position((int) slot.offset);
+        view.limit((int) (slot.offset + slot.length));
+        return view.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * 获取资源的元数据（校验器、新鲜度等），未命中时返回 null
+     */
+    public Map<String, String> getMetadata(String url) {
+        Slot slot = generation.index.get(url);
+        return slot != null ? slot.metadata : null;
+    }
+
+    /**
+     * 追加写入资源，随后更新索引和映射
+     */
+    public void put(String url, byte[] data, Map<String, String> metadata) {
+        put(url, data, metadata, null);
+    }
+
+    /**
+     * 按内容键写入：blob 中已有相同内容时只追加索引记录，指向已有数据
+     * @param contentKey 内容键（如 SHA-256 + 存储编码），为 null 时总是写入数据
+     */
+    public synchronized void put(String url, byte[] data, Map<String, String> metadata, String contentKey) {
+        if (blobChannel == null) return;
+        if (contentKey != null) {
+            Generation gen = generation;
+            Slot existing = gen.contentSlots.get(contentKey);
+            if (existing != null && existing.length == data.length) {
+                try {
+                    Map<String, String> copy = withContentKey(metadata, contentKey);
+                    appendIndexRecord(url, existing.offset, existing.length, copy);
+                    gen.index.put(url, new Slot(existing.offset, existing.length, copy,
+                            accessClock.incrementAndGet()));
+                    dedupBytes += data.length;
+                    Log.d(TAG, "内容已存在，复用 (" + data.length + " bytes): " + url);
+                } catch (IOException e) {
+                    Log.e(TAG, "写入磁盘缓存索引失败: " + url, e);
+                }
+                return;
+            }
+        }
+        if (data.length > maxBytes / 2) {
+            Log.d(TAG, "资源过大，不写入磁盘缓存 (" + data.length + " bytes): " + url);
+            return;
+        }
+        if (blobLength + data.length > maxBytes) {
+            evictLocked(data.length);
+            if (blobChannel == null || blobLength + data.length > maxBytes) return;
+        }
+        Generation gen = generation;
+        try {
+            long offset = blobLength;
+            ensureCapacityLocked(gen, offset + data.length);
+            ByteBuffer src = ByteBuffer.wrap(data);
+            while (src.hasRemaining()) {
+                blobChannel.write(src, offset + src.position());
+            }
+            blobLength = offset + data.length;
+
+            // 先写数据再写索引，中途被杀时索引不会指向未写完的数据
+            Map<String, String> copy = withContentKey(metadata, contentKey);
+            appendIndexRecord(url, offset, data.length, copy);
+
+            Slot slot = new Slot(offset, data.length, copy, accessClock.incrementAndGet());
+            gen.index.put(url, slot);
+            if (contentKey != null) {
+                gen.contentSlots.put(contentKey, slot);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "写入磁盘缓存失败: " + url, e);
+        }
+    }
+
+    /**
+     * 仅更新元数据（例如 304 重新验证后刷新新鲜度），不重写内容
+     */
+    public synchronized void updateMetadata(String url, Map<String, String> metadata) {
+        Generation gen = generation;
+        Slot slot = gen.index.get(url);
+        if (slot == null || blobChannel == null) return;
+        try {
+            // 保留写入时的内容键
+            Map<String, String> copy = withContentKey(metadata, slot.metadata.get(META_CONTENT_KEY));
+            appendIndexRecord(url, slot.offset, slot.length, copy);
+            gen.index.put(url, new Slot(slot.offset, slot.length, copy, slot.lastAccess));
+        } catch (IOException e) {
+            Log.e(TAG, "更新元数据失败: " + url, e);
+        }
+    }
+
+    private static Map<String, String> withContentKey(Map<String, String> metadata, String contentKey) {
+        if (contentKey == null && (metadata == null || metadata.isEmpty())) return Collections.emptyMap();
+        Map<String, String> copy = metadata != null ? new HashMap<>(metadata) : new HashMap<>();
+        if (contentKey != null) {
+            copy.put(META_CONTENT_KEY, contentKey);
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    public int size() {
+        return generation.index.size();
+    }
+
+    /**
+     * 当前所有键（只读视图）
+     */
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(generation.index.keySet());
+    }
+
+    /**
+     * 仍被索引引用的数据字节数（共享同一段数据的多个键只计一次）
+     */
+    public synchronized long getLiveBytes() {
+        Map<Long, Integer> live = new HashMap<>();
+        for (Slot slot : generation.index.values()) {
+            live.put(slot.offset, slot.length);
+        }
+        long bytes = 0;
+        for (int length : live.values()) {
+            bytes += length;
+        }
+        return bytes;
+    }
+
+    /**
+     * 压缩：只把仍被引用的数据和每个键的最新索引记录重写到新文件，替换旧文件后重新打开
+     * 共享同一段数据的键在新文件中仍共享。压缩完成后发布新的一代，压缩期间读取会短暂未命中，
+     * 已返回的切片不受影响（旧文件的映射在替换后依然有效）
+     * @param minReclaimBytes 可回收的字节数不足该值时不做任何事
+     * @return 回收的 blob 字节数
+     */
+    public synchronized long compact(long minReclaimBytes) {
+        if (blobChannel == null) return 0;
+        long before = blobLength;
+        long reclaimable = before - getLiveBytes();
+        if (reclaimable < Math.max(1, minReclaimBytes)) return 0;
+        Map<String, Slot> index = generation.index;
+
+        File blobTmp = new File(directory, BLOB_FILE_NAME + COMPACT_SUFFIX);
+        File indexTmp = new File(directory, INDEX_FILE_NAME + COMPACT_SUFFIX);
+        try {
+            // 旧偏移 -> 新偏移，按旧偏移顺序拷贝
+            Map<Long, Slot> byOffset = new TreeMap<>();
+            for (Slot slot : index.values()) {
+                byOffset.put(slot.offset, slot);
+            }
+            Map<Long, Long> relocated = new HashMap<>();
+            try (RandomAccessFile out = new RandomAccessFile(blobTmp, "rw");
+                 FileChannel outChannel = out.getChannel()) {
+                outChannel.truncate(0);
+                long position = 0;
+                for (Slot slot : byOffset.values()) {
+                    long copied = 0;
+                    while (copied < slot.length) {
+                        long n = blobChannel.transferTo(slot.offset + copied, slot.length - copied, outChannel);
+                        if (n <= 0) throw new IOException("拷贝数据失败");
+                        copied += n;
+                    }
+                    relocated.put(slot.offset, position);
+                    position += slot.length;
+                }
+                outChannel.force(true);
+            }
+
+            // 每个键只写最新的一条记录
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(indexTmp, false)))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                for (Map.Entry<String, Slot> entry : index.entrySet()) {
+                    Slot slot = entry.getValue();
+                    writeIndexRecord(out, entry.getKey(), relocated.get(slot.offset), slot.length, slot.metadata);
+                }
+            }
+
+            close();
+            if (!blobTmp.renameTo(blobFile) || !indexTmp.renameTo(indexFile)) {
+                throw new IOException("替换缓存文件失败");
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "压缩磁盘缓存失败", e);
+            blobTmp.delete();
+            indexTmp.delete();
+            if (blobChannel != null) return 0;
+            // 已关闭但替换失败：旧文件可能已不完整，清空重建
+            blobFile.delete();
+            indexFile.delete();
+        }
+
+        try {
+            open();
+        } catch (IOException e) {
+            Log.e(TAG, "压缩后重新打开磁盘缓存失败", e);
+            return 0;
+        }
+        Log.d(TAG, "磁盘缓存已压缩: " + before + " -> " + blobLength + " bytes");
+        return before - blobLength;
+    }
+
+    /**
+     * 写入将超出上限：按最近访问时间淘汰最久未用的键，直到仍被引用的数据不超过上限的 3/4
+     * （给之后的写入留出空间，避免每次写入都压缩），再压缩回收空间
+     */
+    private void evictLocked(int incoming) {
+        Generation gen = generation;
+        long target = maxBytes * 3 / 4 - incoming;
+
+        // 偏移 -> 引用该段数据的键数；共享的数据在最后一个引用被淘汰时才释放
+        Map<Long, Integer> references = new HashMap<>();
+        long live = 0;
+        for (Slot slot : gen.index.values()) {
+            Integer count = references.get(slot.offset);
+            if (count == null) {
+                live += slot.length;
+            }
+            references.put(slot.offset, count == null ? 1 : count + 1);
+        }
+
+        List<Map.Entry<String, Slot>> byAccess = new ArrayList<>(gen.index.entrySet());
+        Collections.sort(byAccess, (a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+        int evicted = 0;
+        for (Map.Entry<String, Slot> entry : byAccess) {
+            if (live <= target) break;
+            Slot slot = entry.getValue();
+            gen.index.remove(entry.getKey());
+            evicted++;
+            int remaining = references.get(slot.offset) - 1;
+            if (remaining == 0) {
+                references.remove(slot.offset);
+                live -= slot.length;
+            } else {
+                references.put(slot.offset, remaining);
+            }
+        }
+        evictionCount += evicted;
+        Log.d(TAG, "磁盘缓存超出上限，淘汰 " + evicted + " 项，剩余 " + live + " bytes");
+        compact(0);
+    }
+
+    /**
+     * 因超出上限被淘汰的键数
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * 因内容相同而未重复写入的字节数
+     */
+    public synchronized long getDedupBytes() {
+        return dedupBytes;
+    }
+
+    /**
+     * blob 中已写入的数据长度（含已被覆盖的旧数据，不含预先扩展的空白区域）
+     */
+    public synchronized long getBlobLength() {
+        return blobLength;
+    }
+
+    /**
+     * 关闭文件句柄，不删除数据；之后的读取全部未命中，直到重新打开
+     */
+    public synchronized void close() {
+        try {
+            if (indexOut != null) indexOut.close();
+            // 去掉预先扩展的空白区域；已返回的切片都在 blobLength 以内，不受影响
+            if (blobChannel != null && allocatedLength > blobLength) {
+                blobChannel.truncate(blobLength);
+            }
+            if (blobChannel != null) blobChannel.close();
+            if (blobAccess != null) blobAccess.close();
+        } catch (IOException e) {
+            Log.w(TAG, "关闭磁盘缓存失败", e);
+        }
+        indexOut = null;
+        blobChannel = null;
+        blobAccess = null;
+        allocatedLength = 0;
+        generation = new Generation();
+    }
+
+    /**
+     * 删除全部磁盘缓存并重新打开空缓存
+     */
+    public synchronized void clear() {
+        close();
+        blobLength = 0;
+        if (blobFile.exists() && !blobFile.delete()) {
+            Log.w(TAG, "删除 blob 文件失败");
+        }
+        if (indexFile.exists() && !indexFile.delete()) {
+            Log.w(TAG, "删除索引文件失败");
+        }
+        try {
+            open();
+        } catch (IOException e) {
+            Log.e(TAG, "重新打开磁盘缓存失败", e);
+        }
+        Log.d(TAG, "磁盘缓存已清空");
+    }
+}
@@ -0,0 +1,284 @@
+package link.moely.mobile;
+
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * DocumentPrefetchCache
+ * 下一页 HTML 文档的推测性预加载：页面脚本上报进入视口或被按下的链接，
+ * 这里在并发数和字节预算内提前下载这些页面，保存在短时效的内存缓存中，
+ * 用户真正点击时由 shouldInterceptRequest 直接返回。
+ * 文档和登录状态相关，请求带上 WebView 的 Cookie，命中时与页面相关的 Cookie（不含统计 Cookie）发生变化则视为未命中；
+ * 响应设置了 Cookie、发生重定向或禁止缓存的页面不保存。每份文档只使用一次。
+ */
+public class DocumentPrefetchCache {
+    private static final String TAG = "DocumentPrefetch";
+
+    // 预加载的文档只在短时间内有效
+    private static final long TTL_MS = 60 * 1000L;
+    private static final int MAX_CONCURRENT = 2;
+    private static final int MAX_QUEUED = 8;
+    private static final int MAX_DOCUMENT_BYTES = 512 * 1024;
+    private static final long BUDGET_BYTES = 2L * 1024 * 1024;
+    // 导航命中进行中的预加载时最多等待的时间
+    private static final long IN_FLIGHT_WAIT_MS = 3000;
+
+    private static final String ALLOWED_HOST = "moely.link";
+    // 带副作用或不应预加载的路径
+    private static final String[] EXCLUDED_PATH_KEYWORDS = {
+            "logout", "signout", "login", "signin", "delete", "remove", "/api/", "/wp-admin"
+    };
+
+    /**
+     * 一份预加载的文档
+     */
+    private static final class Document {
+        final byte[] body;
+        final String mimeType;
+        final String charset;
+        final Map<String, String> headers;
+        final String cookieHash;
+        final long expiresAt;
+
+        Document(byte[] body, String mimeType, String charset, Map<String, String> headers,
+                 String cookieHash, long expiresAt) {
+            this.body = body;
+            this.mimeType = mimeType;
+            this.charset = charset;
+            this.headers = headers;
+            this.cookieHash = cookieHash;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final OkHttpClient client;
+    private final ByteBudgetLruCache<String, Document> documents =
+            new ByteBudgetLruCache<>(BUDGET_BYTES, (url, doc) -> doc.body.length);
+    private final Map<String, CompletableFuture<Document>> inFlight = new ConcurrentHashMap<>();
+
+    // 以下两项由 this 保护
+    private final Deque<String> queue = new ArrayDeque<>();
+    private int running;
+
+    private final AtomicLong fetchedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+
+    public DocumentPrefetchCache(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 提交候选链接
+     * @param urgent 用户已按下该链接：插到队首；否则按顺序排队，队列满时丢弃
+     */
+    public void prefetch(List<String> urls, boolean urgent, String userAgent) {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (String url : urls) {
+                if (!isPrefetchable(url) || queue.contains(url) || inFlight.containsKey(url)) continue;
+                Document cached = documents.get(url);
+                if (cached != null && cached.expiresAt > now) continue;
+                if (urgent) {
+                    queue.addFirst(url);
+                    if (queue.size() > MAX_QUEUED) queue.removeLast();
+                } else if (queue.size() < MAX_QUEUED) {
+                    queue.addLast(url);
+                }
+            }
+        }
+        drain(userAgent);
+    }
+
+    /**
+     * 取出预加载的文档（只能使用一次）
+     * 正在预加载时等待其完成；已过期或登录状态发生变化时返回 null
+     */
+    public WebResourceResponse take(String url) {
+        Document doc = documents.remove(url);
+        if (doc == null) {
+            CompletableFuture<Document> pending = inFlight.get(url);
+            if (pending == null) return null;
+            try {
+                doc = pending.get(IN_FLIGHT_WAIT_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            if (doc == null) return null;
+            documents.remove(url);
+        }
+
+        if (doc.expiresAt <= System.currentTimeMillis()) return null;
+        if (!doc.cookieHash.equals(cookieHash(url))) {
+            Log.d(TAG, "登录状态已变化，放弃预加载的文档: " + url);
+            return null;
+        }
+        hits.incrementAndGet();
+        Log.d(TAG, "导航命中预加载文档 (" + doc.body.length + " bytes): " + url);
+        InputStream data = new ByteArrayInputStream(doc.body);
+        return new WebResourceResponse(doc.mimeType, doc.charset, 200, "OK", doc.headers, data);
+    }
+
+    public void clear() {
+        synchronized (this) {
+            queue.clear();
+        }
+        documents.clear();
+    }
+
+    public long getResidentBytes() {
+        return documents.getResidentBytes();
+    }
+
+    public String describeStats() {
+        return "文档预加载: " + prefetched.get() + " 份 (" + fetchedBytes.get() + " bytes)，命中 " + hits.get() + " 次";
+    }
+
+    private void drain(String userAgent) {
+        while (true) {
+            String url;
+            synchronized (this) {
+                if (running >= MAX_CONCURRENT || queue.isEmpty()) return;
+                url = queue.pollFirst();
+                running++;
+            }
+            start(url, userAgent);
+        }
+    }
+
+    private void start(String url, String userAgent) {
+        CompletableFuture<Document> future = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(url, future) != null) {
+            finished(userAgent);
+            return;
+        }
+
+        String cookies = CookieManager.getInstance().getCookie(url);
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Accept", "text/html,application/xhtml+xml")
+                // 告知服务器这是预加载请求
+                .header("Sec-Purpose", "prefetch");
+        if (cookies != null && !cookies.isEmpty()) {
+            builder.header("Cookie", cookies);
+        }
+        if (userAgent != null && !userAgent.isEmpty()) {
+            builder.header("User-Agent", userAgent);
+        }
+
+        client.newCall(builder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "文档预加载失败: " + url + " - " + e.getMessage());
+                complete(null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                Document doc = null;
+                try {
+                    doc = toDocument(url, cookies, response);
+                } catch (IOException e) {
+                    Log.w(TAG, "文档预加载读取失败: " + url, e);
+                } finally {
+                    response.close();
+                    complete(doc);
+                }
+            }
+
+            private void complete(Document doc) {
+                if (doc != null) {
+                    documents.put(url, doc);
+                    prefetched.incrementAndGet();
+                    fetchedBytes.addAndGet(doc.body.length);
+                    Log.d(TAG, "已预加载文档 (" + doc.body.length + " bytes): " + url);
+                }
+                inFlight.remove(url, future);
+                future.complete(doc);
+                finished(userAgent);
+            }
+        });
+    }
+
+    private void finished(String userAgent) {
+        synchronized (this) {
+            running--;
+        }
+        drain(userAgent);
+    }
+
+    /**
+     * 检查响应是否可以作为预加载文档使用
+     */
+    private Document toDocument(String url, String cookies, Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (response.code() != 200 || body == null) return null;
+        // 发生过重定向：WebView 会以原 URL 显示内容，相对链接会出错
+        if (!response.request().url().toString().equals(url)) return null;
+        // WebView 不会处理拦截响应中的 Set-Cookie，这类页面交给 WebView 自己加载
+        if (response.header("Set-Cookie") != null) return null;
+        if (response.cacheControl().noStore()) return null;
+
+        MediaType contentType = body.contentType();
+        if (contentType == null || !"html".equals(contentType.subtype())) return null;
+        if (body.contentLength() > MAX_DOCUMENT_BYTES) return null;
+
+        byte[] bytes = body.bytes();
+        if (bytes.length > MAX_DOCUMENT_BYTES) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        for (String name : new String[]{"Cache-Control", "Content-Language", "Content-Security-Policy", "Referrer-Policy"}) {
+            String value = response.header(name);
+            if (value != null) headers.put(name, value);
+        }
+        String charset = contentType.charset() != null ? contentType.charset().name() : "UTF-8";
+        return new Document(bytes, "text/html", charset, Collections.unmodifiableMap(headers),
+                MainFrameHtmlCache.relevantCookieDigest(cookies), System.currentTimeMillis() + TTL_MS);
+    }
+
+    private static boolean isPrefetchable(String url) {
+        Uri uri = Uri.parse(url);
+        if (!"https".equals(uri.getScheme()) || uri.getHost() == null) return false;
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        if (!host.equals(ALLOWED_HOST) && !host.endsWith("." + ALLOWED_HOST)) return false;
+        String lower = url.toLowerCase(Locale.ROOT);
+        for (String keyword : EXCLUDED_PATH_KEYWORDS) {
+            if (lower.contains(keyword)) return false;
+        }
+        return true;
+    }
+
+    private static String cookieHash(String url) {
+        return MainFrameHtmlCache.relevantCookieDigest(CookieManager.getInstance().getCookie(url));
+    }
+}
@@ -0,0 +1,426 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * ImageTranscoder
+ * 可选的图片压缩优化（默认关闭，在设置中开启）：瀑布流相册页面加载的原图在手机上只显示很小的尺寸，
+ * 这里由原生层下载原图，按屏幕宽度用 inSampleSize 缩小解码，重新编码为 WebP 后返回给 WebView，
+ * 并保存在磁盘缓存中。节省流量、解码时间和显存。
+ * 没有缓存时由这里下载原图（代替 WebView 的请求，每张图只下载一次），转码在固定大小的后台线程池中进行，
+ * 最多等待 TRANSCODE_WAIT_MS：超时或线程池已满时本次直接返回原图，转码在后台完成后供下次使用；
+ * 不能转码的响应（非 JPEG / PNG、错误状态、过大）原样流式返回。下载时带上 Cookie 和页面的 Referer（防盗链）；
+ * 下载或转码失败的图片在一段时间内不再处理，交给 WebView 自己加载。
+ * 只处理 JPEG / PNG；GIF（动图）、SVG、WebP 不处理。转码后不比原图小时返回原图。
+ */
+public class ImageTranscoder {
+    private static final String TAG = "ImageTranscoder";
+
+    private static final String DISK_CACHE_DIR = "transcoded_images";
+    // 磁盘缓存上限，超出时淘汰最久未用的图片
+    private static final long MAX_BLOB_BYTES = 32L * 1024 * 1024;
+    // 原图超过该大小不处理（避免解码时内存不足）
+    private static final int MAX_SOURCE_BYTES = 16 * 1024 * 1024;
+    // 缓存的转码结果有效期
+    private static final long TTL_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    private static final int POOL_SIZE = 2;
+    private static final int MAX_QUEUED = 16;
+    // 原图下载完成后等待转码结果的上限，超时后返回原图
+    private static final long TRANSCODE_WAIT_MS = 1500;
+    // 下载或转码失败的图片在这段时间内不再尝试
+    private static final long FAILURE_TTL_MS = 10 * 60 * 1000L;
+    // 失败记录的条数上限，超出时清空重新记录
+    private static final int MAX_FAILURES = 512;
+
+    private static final String META_MIME = "mime";
+    private static final String META_FETCHED_AT = "fetched_at";
+    private static final String META_CACHE_CONTROL = "cache_control";
+
+    private final OkHttpClient client;
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            POOL_SIZE, POOL_SIZE, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED));
+    // 正在转码的缓存键
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // 缓存键 -> 可以再次尝试的时间
+    private final Map<String, Long> failedUntil = new ConcurrentHashMap<>();
+
+    private volatile DiskResourceCache disk;
+    private volatile boolean enabled;
+    // 解码后的最大宽度（屏幕宽度像素）
+    private volatile int maxWidthPx = 1080;
+    private volatile String userAgent;
+
+    private final AtomicLong sourceBytes = new AtomicLong();
+    private final AtomicLong outputBytes = new AtomicLong();
+    private final AtomicLong transcoded = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong servedOriginal = new AtomicLong();
+
+    /**
+     * 转码的结果（或不值得转码时的原图）
+     */
+    private static final class Output {
+        final byte[] data;
+        final String mime;
+
+        Output(byte[] data, String mime) {
+            this.data = data;
+            this.mime = mime;
+        }
+    }
+
+    public ImageTranscoder(OkHttpClient client) {
+        this.client = client;
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public synchronized void open(Context context) {
+        if (disk != null) return;
+        File dir = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+        DiskResourceCache cache = new DiskResourceCache(dir, MAX_BLOB_BYTES);
+        try {
+            cache.open();
+            disk = cache;
+        } catch (IOException e) {
+            Log.e(TAG, "图片缓存初始化失败", e);
+        }
+    }
+
+    /**
+     * @param maxWidthPx 屏幕宽度（像素），解码后的图片不会明显小于该宽度
+     */
+    public void configure(boolean enabled, int maxWidthPx) {
+        this.enabled = enabled;
+        if (maxWidthPx > 0) {
+            this.maxWidthPx = maxWidthPx;
+        }
+        Log.d(TAG, "图片压缩优化" + (enabled ? "已开启，最大宽度 " + maxWidthPx + "px" : "已关闭"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * 是否按 URL 后缀判断为可转码的图片（JPEG / PNG）
+     */
+    public static boolean isCandidate(String url) {
+        String mimeType = ResourceHeaders.guessMimeType(url);
+        return mimeType.equals("image/jpeg") || mimeType.equals("image/png");
+    }
+
+    /**
+     * 返回图片：有缓存时直接返回转码结果；没有缓存时下载原图并转码，转码及时完成时返回转码结果，
+     * 否则返回原图（转码在后台继续）。不能转码的响应原样返回。
+     * 未开启、不是候选图片、近期失败过或下载失败时返回 null，由 WebView 自己加载
+     * 注意：阻塞等待下载（与 WebView 自己加载相同），只能在 shouldInterceptRequest 等后台线程调用
+     * @param quality WebP 编码质量（0-100）
+     * @param requestHeaders WebView 请求头（用于转发 Referer）
+     */
+    public WebResourceResponse serve(String url, int quality, Map<String, String> requestHeaders) {
+        DiskResourceCache cache = disk;
+        if (!enabled || cache == null || !isCandidate(url)) return null;
+
+        String key = cacheKey(url);
+        WebResourceResponse cached = fromCache(cache, key);
+        if (cached != null) return cached;
+
+        Long retryAt = failedUntil.get(key);
+        if (retryAt != null) {
+            if (System.currentTimeMillis() < retryAt) return null;
+            failedUntil.remove(key, retryAt);
+        }
+
+        Response response;
+        try {
+            response = client.newCall(sourceRequest(url, requestHeaders)).execute();
+        } catch (IOException e) {
+            recordFailure(key);
+            Log.w(TAG, "原图下载失败，交给 WebView 加载: " + url + " - " + e.getMessage());
+            return null;
+        }
+
+        byte[] original;
+        String originalMime;
+        String cacheControl;
+        try {
+            ResponseBody body = response.body();
+            if (body == null) {
+                response.close();
+                recordFailure(key);
+                return null;
+            }
+            MediaType contentType = body.contentType();
+            originalMime = contentType != null ? contentType.type() + "/" + contentType.subtype() : "";
+            cacheControl = response.header("Cache-Control");
+            boolean transcodable = response.isSuccessful() && !response.cacheControl().noStore()
+                    && (originalMime.equals("image/jpeg") || originalMime.equals("image/png"))
+                    && body.contentLength() <= MAX_SOURCE_BYTES;
+            if (!transcodable) {
+                // 不能转码：原样流式返回（关闭流时释放响应），近期不再处理
+                recordFailure(key);
+                return originalResponse(response.code(), response.message(),
+                        contentType != null ? originalMime : null, cacheControl, body.byteStream());
+            }
+            original = body.bytes();
+        } catch (IOException e) {
+            response.close();
+            recordFailure(key);
+            Log.w(TAG, "原图读取失败，交给 WebView 加载: " + url + " - " + e.getMessage());
+            return null;
+        }
+        response.close();
+
+        Output output = transcodeWithin(url, key, original, originalMime, cacheControl, quality);
+        if (output != null) {
+            return imageResponse(output.mime, cacheControl, output.data);
+        }
+        servedOriginal.incrementAndGet();
+        return imageResponse(originalMime, cacheControl, original);
+    }
+
+    /**
+     * 在线程池中转码并保存，最多等待 TRANSCODE_WAIT_MS
+     * @return 转码结果；超时、线程池已满或失败时返回 null（超时的转码在后台继续完成）
+     */
+    private Output transcodeWithin(String url, String key, byte[] original, String originalMime,
+                                   String cacheControl, int quality) {
+        if (original.length > MAX_SOURCE_BYTES || !inFlight.add(key)) return null;
+        CompletableFuture<Output> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                Output output = null;
+                try {
+                    output = transcode(url, key, original, originalMime, cacheControl, quality);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "图片转码失败: " + url + " - " + e.getMessage());
+                } finally {
+                    if (output == null) {
+                        recordFailure(key);
+                    }
+                    inFlight.remove(key);
+                    result.complete(output);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+            Log.d(TAG, "转码队列已满，返回原图: " + url);
+            return null;
+        }
+        try {
+            return result.get(TRANSCODE_WAIT_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private Request sourceRequest(String url, Map<String, String> requestHeaders) {
+        Request.Builder builder = new Request.Builder().url(url)
+                .header("Accept", "image/jpeg,image/png,image/*;q=0.8");
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null && !cookies.isEmpty()) {
+            builder.header("Cookie", cookies);
+        }
+        String ua = userAgent;
+        if (ua != null) {
+            builder.header("User-Agent", ua);
+        }
+        String referer = MediaRangeCache.header(requestHeaders, "Referer");
+        if (referer != null) {
+            builder.header("Referer", referer);
+        }
+        return builder.build();
+    }
+
+    private static WebResourceResponse imageResponse(String mime, String cacheControl, byte[] data) {
+        return originalResponse(200, "OK", mime, cacheControl, new ByteArrayInputStream(data));
+    }
+
+    private static WebResourceResponse originalResponse(int code, String message, String mime,
+                                                        String cacheControl, InputStream data) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Access-Control-Allow-Origin", "*");
+        if (cacheControl != null) {
+            headers.put("Cache-Control", cacheControl);
+        }
+        String reason = message == null || message.isEmpty() ? "OK" : message;
+        return new WebResourceResponse(mime, null, code, reason, headers, data);
+    }
+
+    private void recordFailure(String key) {
+        if (failedUntil.size() >= MAX_FAILURES) {
+            failedUntil.clear();
+        }
+        failedUntil.put(key, System.currentTimeMillis() + FAILURE_TTL_MS);
+        failures.incrementAndGet();
+    }
+
+    public void clear() {
+        DiskResourceCache cache = disk;
+        if (cache != null) {
+            cache.clear();
+        }
+        failedUntil.clear();
+    }
+
+    public String describeStats() {
+        return "图片转码: " + transcoded.get() + " 张，" + sourceBytes.get() + " -> " + outputBytes.get()
+                + " bytes，转码未及时完成返回原图 " + servedOriginal.get() + " 次，失败 " + failures.get() + " 次";
+    }
+
+    /**
+     * 转码原图，结果（或不值得转码时的原图）写入磁盘缓存
+     * @return 写入缓存的结果；缓存不可用时返回 null
+     */
+    private Output transcode(String url, String key, byte[] original, String originalMime,
+                             String cacheControl, int quality) {
+        byte[] output = encode(original, originalMime, quality);
+        String outputMime = "image/webp";
+        if (output == null || output.length >= original.length) {
+            // 转码没有收益，保存原图，下次同样直接命中
+            output = original;
+            outputMime = originalMime;
+        }
+
+        DiskResourceCache cache = disk;
+        if (cache == null) return null;
+        Map<String, String> meta = new HashMap<>();
+        meta.put(META_MIME, outputMime);
+        meta.put(META_FETCHED_AT, String.valueOf(System.currentTimeMillis()));
+        if (cacheControl != null) {
+            meta.put(META_CACHE_CONTROL, cacheControl);
+        }
+        cache.put(key, output, meta);
+
+        transcoded.incrementAndGet();
+        sourceBytes.addAndGet(original.length);
+        outputBytes.addAndGet(output.length);
+        Log.d(TAG, "图片已处理 " + original.length + " -> " + output.length + " bytes (" + outputMime + "): " + url);
+        return new Output(output, outputMime);
+    }
+
+    /**
+     * 按屏幕宽度缩小解码后编码为 WebP
+     * @return WebP 数据；无法解码时返回 null
+     */
+    private byte[] encode(byte[] original, String mimeType, int quality) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(original, 0, original.length, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSizeFor(bounds.outWidth, maxWidthPx);
+        // JPEG 没有透明通道，用 RGB_565 减半解码内存
+        options.inPreferredConfig = "image/jpeg".equals(mimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(original, 0, original.length, options);
+        if (bitmap == null) return null;
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(original.length / 2);
+            Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? Bitmap.CompressFormat.WEBP_LOSSY
+                    : Bitmap.CompressFormat.WEBP;
+            if (!bitmap.compress(format, quality, out)) return null;
+            return out.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * 最大的 2 的幂，使缩小后的宽度仍不小于目标宽度
+     */
+    static int sampleSizeFor(int width, int targetWidth) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private WebResourceResponse fromCache(DiskResourceCache cache, String key) {
+        DiskResourceCache.Entry cached = cache.getEntry(key);
+        if (cached == null || cached.metadata == null) return null;
+        Map<String, String> meta = cached.metadata;
+        long fetchedAt = parseLong(meta.get(META_FETCHED_AT));
+        if (System.currentTimeMillis() - fetchedAt > TTL_MS) return null;
+
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Access-Control-Allow-Origin", "*");
+        String cacheControl = meta.get(META_CACHE_CONTROL);
+        if (cacheControl != null) {
+            headers.put("Cache-Control", cacheControl);
+        }
+        return new WebResourceResponse(meta.get(META_MIME), null, 200, "OK", headers,
+                new ByteBufferInputStream(cached.data));
+    }
+
+    /**
+     * 同一图片在不同屏幕宽度下的结果不同
+     */
+    private String cacheKey(String url) {
+        return url + "#w=" + maxWidthPx;
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 按网络策略选择 WebP 编码质量
+     */
+    static int qualityFor(NetworkPolicy policy) {
+        switch (policy.imageQuality()) {
+            case "high":
+                return 85;
+            case "medium":
+                return 75;
+            default:
+                return 60;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package link.moely.mobile;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram
+ * 无锁的耗时直方图（HDR 风格的对数-线性分桶），单位微秒。
+ * 每个 2 的幂区间再均分为 16 个子桶，相对误差约 6%，范围 0 ~ 约 134 秒，超出的计入最后一个桶。
+ * record 只做一次原子自增，可以在 shouldInterceptRequest 的多个线程中并发调用。
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // 最大的区间位移，决定可记录的上限：(2 * SUB_BUCKETS) << MAX_SHIFT 微秒
+    private static final int MAX_SHIFT = 22;
+    private static final int BUCKET_COUNT = (MAX_SHIFT + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        record(Math.max(0, nanos / 1000));
+    }
+
+    /**
+     * @param micros 耗时（微秒）
+     */
+    public void record(long micros) {
+        if (micros < 0) micros = 0;
+        buckets.incrementAndGet(indexFor(micros));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalMicros.sum() / n;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * @param percentile 0 ~ 100
+     * @return 该百分位所在桶的上界（微秒），没有记录时返回 0
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(upperBound(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalMicros.reset();
+        maxMicros.set(0);
+    }
+
+    /**
+     * 例如 "n=120 mean=0.4ms p50=0.2ms p90=1.1ms p99=8.0ms max=12.3ms"
+     */
+    public String summary() {
+        return "n=" + getCount()
+                + " mean=" + formatMillis(getMeanMicros())
+                + " p50=" + formatMillis(getPercentileMicros(50))
+                + " p90=" + formatMillis(getPercentileMicros(90))
+                + " p99=" + formatMillis(getPercentileMicros(99))
+                + " max=" + formatMillis(getMaxMicros());
+    }
+
+    static int indexFor(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        if (shift > MAX_SHIFT) return BUCKET_COUNT - 1;
+        int sub = (int) (micros >>> shift) - SUB_BUCKETS;
+        return (shift + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        int sub = index % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << shift;
+    }
+
+    static long upperBound(int index) {
+        if (index >= BUCKET_COUNT - 1) return Long.MAX_VALUE;
+        return lowerBound(index + 1) - 1;
+    }
+
+    private static String formatMillis(long micros) {
+        return String.format(Locale.ROOT, "%.1fms", micros / 1000.0);
+    }
+}
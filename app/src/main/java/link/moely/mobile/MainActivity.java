@@ -41,6 +41,8 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.core.content.ContextCompat;
+import androidx.webkit.ServiceWorkerClientCompat;
+import androidx.webkit.ServiceWorkerControllerCompat;
 import androidx.webkit.WebSettingsCompat;
 import androidx.webkit.WebViewCompat;
 import androidx.webkit.WebViewFeature;
@@ -48,7 +50,13 @@ import androidx.activity.OnBackPressedCallback;
 
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 /**
  * MainActivity - 应用主界面（Chromium WebView 增强版）
@@ -74,10 +82,12 @@ import java.io.File;
 public class MainActivity extends BaseActivity {
 
     private static final String TAG = "MoelyMobileWebView";
+    private static final String MEMORY_PRESSURE_WEBVIEW = "WebView";
     
     // SharedPreferences 配置
     private static final String PREFS_NAME = "MoelyAppPrefs";
     private static final String PREF_DOWNLOAD_DIRECTORY = "download_directory";
+    private static final String PREF_IMAGE_TRANSCODING = "image_transcoding_enabled";
     
     // WebView 配置
     private static final String HOME_URL = "https://www.moely.link";
@@ -116,6 +126,20 @@ public class MainActivity extends BaseActivity {
     private boolean isPageTranslated = false;
     private String currentPageUrl = "";
 
+    // 当前页面是否在离线模式下加载（网络恢复后需要重新加载）
+    private boolean pageLoadedOffline = false;
+
+    // 用户刷新（或网络恢复后重新加载）的页面：这一次导航不使用缓存的页面，从网络获取
+    private volatile String reloadFromNetworkUrl;
+
+    // 网络状态变化：切换 WebView 缓存模式，网络恢复后重新加载离线时打开的页面
+    private final ConnectivityMonitor.Listener connectivityListener =
+            online -> runOnUiThread(() -> onConnectivityChanged(online));
+
+    // 网络类型变化：调整媒体自动播放，并把图片质量提示告知页面
+    private final ConnectivityMonitor.PolicyListener networkPolicyListener =
+            policy -> runOnUiThread(() -> onNetworkPolicyChanged(policy));
+
     @SuppressLint("SetJavaScriptEnabled")
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -133,39 +157,32 @@ public class MainActivity extends BaseActivity {
         // 【新增】初始化翻译管理器
         translationManager = TranslationEngine.TranslationManager.getInstance(this);
 
-        // 首次打开时，启动关键资源预加载
-        // 建议填写体积较大且影响首屏渲染的文件
-        boolean isFirstRun = prefs.getBoolean("is_first_launch_for_resources", true);
-        if (isFirstRun) {
-            Log.d(TAG, "已启动后台资源预加载");
-            WebResourcePrefetcher.getInstance().prefetch(
-                "https://www.moely.link/assets/css/style.css",
-                "https://www.moely.link/assets/css/user.css",
-                "https://www.moely.link/sw.js",
-                "https://www.moely.link/assets/js/lazyload.js",
-                "https://www.moely.link/assets/js/menuzord.js",
-                "https://www.moely.link/assets/js/add-star.js",
-                "https://www.moely.link/assets/js/login.js",
-                "https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.7.2/css/all.min.css",
-                "https://cdnjs.cloudflare.com/ajax/libs/twitter-bootstrap/3.4.0/css/bootstrap.min.css",
-                "https://cdnjs.cloudflare.com/ajax/libs/social-share.js/1.0.16/css/share.min.css",
-                "https://cdn.jsdelivr.net/npm/@fancyapps/fancybox@3.5.7/dist/jquery.fancybox.min.css",
-                "https://cdn.jsdelivr.net/npm/@algolia/algoliasearch-netlify-frontend@1/dist/algoliasearchNetlify.css",
-                "https://fonts.loli.net/css?family=Abel|Source+Sans+Pro:400,300,300italic,400italic,600,600italic,700,700italic,900,900italic,200italic,200",
-                "https://cdnjs.cloudflare.com/ajax/libs/twitter-bootstrap/3.4.0/js/bootstrap.min.js",
-                "https://cdnjs.cloudflare.com/ajax/libs/social-share.js/1.0.16/js/social-share.min.js",
-                "https://cdn.jsdelivr.net/npm/jquery@2.2.3/dist/jquery.min.js",
-                "https://cdn.jsdelivr.net/npm/@fancyapps/fancybox@3.5.7/dist/jquery.fancybox.min.js",
-                "https://cdn.jsdelivr.net/npm/masonry-layout@4.2.2/dist/masonry.pkgd.min.js",
-                "https://cdn.jsdelivr.net/npm/@supabase/supabase-js@2.47.12/dist/umd/supabase.js",
-                "https://cdn.jsdelivr.net/npm/@algolia/algoliasearch-netlify-frontend@1/dist/algoliasearchNetlify.js",
-                "https://js.hcaptcha.com/1/api.js",
-                "https://www.googletagmanager.com/gtag/js?id=G-Z3X6D0X4W1"
-            );
-            prefs.edit().putBoolean("is_first_launch_for_resources", false).apply();
+        // 初始化预加载器的磁盘缓存层，之前下载过的资源冷启动后可直接命中
+        WebResourcePrefetcher.getInstance().init(this);
+        // 图片压缩优化（设置中开启），按屏幕宽度缩小大图
+        WebResourcePrefetcher.getInstance().setImageTranscoding(
+                prefs.getBoolean(PREF_IMAGE_TRANSCODING, false),
+                getResources().getDisplayMetrics().widthPixels);
+        // 缓存的主页面在后台发现有更新时通知页面
+        WebResourcePrefetcher.getInstance().setMainFrameUpdateListener(
+                url -> runOnUiThread(() -> onMainFrameContentChanged(url)));
+        ConnectivityMonitor.getInstance(this).addListener(connectivityListener);
+        ConnectivityMonitor.getInstance(this).addPolicyListener(networkPolicyListener);
+
+        // 预连接首屏依赖的源站，提前完成 DNS 解析和 TLS 握手，预加载请求直接复用连接
+        WebResourcePrefetcher.getInstance().preconnect();
+
+        // 按服务端下发的清单预加载关键资源，只下载哈希发生变化的文件
+        // 离线时回退到上次保存的清单或 APK 内置清单（assets/prefetch-manifest.json）
+        // 最近已在后台预热过缓存时跳过，不与页面加载争抢带宽
+        if (CacheWarmWorker.isRecentlyWarmed(this)) {
+            Log.d(TAG, "缓存已在后台预热，跳过前台预加载");
         } else {
-            Log.d(TAG, "非首次运行，跳过 Java 预加载，通过 ServiceWorker 加载资源。");
+            Log.d(TAG, "已启动后台资源预加载");
+            WebResourcePrefetcher.getInstance().prefetchFromManifest(this);
         }
+        // 设备空闲、充电且连接不计流量网络时在后台预热缓存
+        CacheWarmWorker.schedule(this);
         
         // 注册权限请求启动器
         registerPermissionLaunchers();
@@ -339,7 +356,9 @@ public class MainActivity extends BaseActivity {
         webSettings.setAllowContentAccess(true);
         
         // ===== 缓存策略 =====
-        webSettings.setCacheMode(WebSettings.LOAD_DEFAULT);
+        // 离线时只使用 WebView 自身缓存，不发起注定超时的网络请求
+        webSettings.setCacheMode(ConnectivityMonitor.getInstance(this).isOnline()
+                ? WebSettings.LOAD_DEFAULT : WebSettings.LOAD_CACHE_ONLY);
         
         // ===== 视口和缩放 =====
         webSettings.setLoadWithOverviewMode(true);
@@ -349,7 +368,9 @@ public class MainActivity extends BaseActivity {
         webSettings.setDisplayZoomControls(false);
         
         // ===== 媒体播放 =====
-        webSettings.setMediaPlaybackRequiresUserGesture(false);
+        // 计流量网络下需要用户手势才播放，避免自动播放消耗流量
+        webSettings.setMediaPlaybackRequiresUserGesture(
+                !WebResourcePrefetcher.getInstance().getNetworkPolicy().allowMediaAutoplay());
         
         // ===== 文本缩放 =====
         webSettings.setTextZoom(100);
@@ -396,6 +417,8 @@ public class MainActivity extends BaseActivity {
         // ===== 设置客户端 =====
         setupWebViewClient();
         setupWebChromeClient();
+        setupServiceWorkerClient();
+        setupMemoryPressureHook();
         
         // ===== 下载监听器 =====
         setupDownloadListener();
@@ -451,6 +474,69 @@ public class MainActivity extends BaseActivity {
         }
     }
 
+    /**
+     * 设置 Service Worker 的请求拦截
+     * 网站注册了 sw.js，受其控制的页面发出的请求由 Service Worker 处理，不经过 WebViewClient；
+     * 这里让 Service Worker 发出的请求同样先查预加载缓存（内存、磁盘、APK 内置资源、进行中的下载），
+     * 避免同一资源被下载两次。Service Worker 脚本本身不拦截，保证其更新检查拿到最新版本。
+     */
+    private void setupServiceWorkerClient() {
+        if (!WebViewFeature.isFeatureSupported(WebViewFeature.SERVICE_WORKER_BASIC_USAGE)
+                || !WebViewFeature.isFeatureSupported(WebViewFeature.SERVICE_WORKER_SHOULD_INTERCEPT_REQUEST)) {
+            Log.d(TAG, "当前 WebView 不支持拦截 Service Worker 请求");
+            return;
+        }
+        ServiceWorkerControllerCompat.getInstance().setServiceWorkerClient(new ServiceWorkerClientCompat() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(@NonNull WebResourceRequest request) {
+                long interceptStart = System.nanoTime();
+                RequestMetrics metrics = RequestMetrics.getInstance();
+                String url = request.getUrl().toString();
+                if (!"GET".equals(request.getMethod())
+                        || "script".equals(MediaRangeCache.header(request.getRequestHeaders(), "Service-Worker"))) {
+                    return null;
+                }
+
+                // 页面经 Service Worker 取得的子资源同样记入导航记录
+                WebResourcePrefetcher.getInstance().recordRequest(url, request.getMethod(), false);
+
+                if (WebResourcePrefetcher.isRangeRequest(request.getRequestHeaders())) {
+                    WebResourceResponse partial = WebResourcePrefetcher.getInstance()
+                            .getRangeResponse(url, request.getRequestHeaders());
+                    return metrics.recordServiceWorker(url, RequestMetrics.Source.RANGE, interceptStart, partial);
+                }
+
+                WebResourceResponse cachedResponse = WebResourcePrefetcher.getInstance().getCachedResponse(url);
+                if (cachedResponse != null) {
+                    return metrics.recordServiceWorker(url, RequestMetrics.Source.CACHE, interceptStart, cachedResponse);
+                }
+
+                WebResourceResponse mirrored = WebResourcePrefetcher.getInstance().getMirroredResponse(url);
+                return metrics.recordServiceWorker(url, RequestMetrics.Source.MIRROR, interceptStart, mirrored);
+            }
+        });
+        Log.d(TAG, "已设置 Service Worker 请求拦截");
+    }
+
+    /**
+     * 内存紧张时释放 WebView 的内存缓存（最后一个阶段，原生缓存收缩后仍紧张时执行）
+     * WebView.freeMemory 已废弃且无效果，这里清空 WebView 的内存缓存，磁盘缓存保留
+     */
+    private void setupMemoryPressureHook() {
+        MemoryPressureCoordinator.getInstance().register(MEMORY_PRESSURE_WEBVIEW,
+                MemoryPressureCoordinator.PRIORITY_WEBVIEW, stage -> {
+                    if (stage != MemoryPressureCoordinator.Stage.RELEASE) return 0;
+                    runOnUiThread(() -> {
+                        if (webView != null) {
+                            webView.clearCache(false);
+                            Log.d(TAG, "内存紧张，已清空 WebView 内存缓存");
+                        }
+                    });
+                    // WebView 不提供释放的字节数
+                    return 0;
+                });
+    }
+
     /**
      * 设置 WebViewClient
      */
@@ -460,19 +546,73 @@ public class MainActivity extends BaseActivity {
             // 尝试使用本地预加载的静态资源
             @Override
             public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                // 拦截耗时和命中情况计入请求统计
+                long interceptStart = System.nanoTime();
+                RequestMetrics metrics = RequestMetrics.getInstance();
+
                 // 获取请求的 URL
                 String url = request.getUrl().toString();
+                boolean mainFrame = request.isForMainFrame();
+
+                // 记录页面加载的子资源；主页面请求时按历史记录预加载该类页面常用的资源
+                WebResourcePrefetcher.getInstance().recordRequest(url, request.getMethod(), request.isForMainFrame());
+
+                // 点击的链接已被推测性预加载时直接返回该文档
+                if (request.isForMainFrame() && "GET".equals(request.getMethod())) {
+                    boolean forceNetwork = url.equals(reloadFromNetworkUrl);
+                    if (forceNetwork) {
+                        reloadFromNetworkUrl = null;
+                    }
+                    WebResourceResponse document = forceNetwork
+                            ? null : WebResourcePrefetcher.getInstance().getPrefetchedDocument(url);
+                    if (document != null) {
+                        return metrics.record(url, true, RequestMetrics.Source.DOCUMENT_PREFETCH, interceptStart, document);
+                    }
+                    // 先显示上次缓存的页面，后台重新验证；没有缓存或用户刷新时下载一次，同时交给 WebView 并保存
+                    WebResourceResponse cachedPage = WebResourcePrefetcher.getInstance()
+                            .getMainFrameResponse(url, request.getRequestHeaders(), forceNetwork);
+                    if (cachedPage != null) {
+                        return metrics.record(url, true, RequestMetrics.Source.MAIN_FRAME_CACHE, interceptStart, cachedPage);
+                    }
+                }
                 
-                // 尝试从我们的预加载器中获取数据
+                // 带 Range 头的请求（媒体拖动进度）返回 206 分段数据，不能用完整的 200 响应代替
+                if (WebResourcePrefetcher.isRangeRequest(request.getRequestHeaders())) {
+                    WebResourceResponse partial = WebResourcePrefetcher.getInstance()
+                            .getRangeResponse(url, request.getRequestHeaders());
+                    return partial != null
+                            ? metrics.record(url, mainFrame, RequestMetrics.Source.RANGE, interceptStart, partial)
+                            : metrics.record(url, mainFrame, RequestMetrics.Source.WEBVIEW, interceptStart,
+                                    super.shouldInterceptRequest(view, request));
+                }
+
+                // 开启图片压缩优化时，大图缩小并转为 WebP 后返回
+                if (!request.isForMainFrame() && "GET".equals(request.getMethod())) {
+                    WebResourceResponse image = WebResourcePrefetcher.getInstance().getTranscodedImage(url, request.getRequestHeaders());
+                    if (image != null) {
+                        return metrics.record(url, false, RequestMetrics.Source.TRANSCODED_IMAGE, interceptStart, image);
+                    }
+                }
+
+                // 尝试从我们的预加载器中获取数据（内存、磁盘、APK 内置资源，等价的 URL 命中同一条缓存）
                 WebResourceResponse cachedResponse = WebResourcePrefetcher.getInstance().getCachedResponse(url);
                 
                 if (cachedResponse != null) {
                     // 如果内存里有，直接返回，不再经过网络
-                    return cachedResponse;
+                    return metrics.record(url, mainFrame, RequestMetrics.Source.CACHE, interceptStart, cachedResponse);
+                }
+
+                // 已知公共库从最快的 CDN 镜像获取，某个 CDN 慢或被屏蔽时不会卡住页面
+                if (!request.isForMainFrame() && "GET".equals(request.getMethod())) {
+                    WebResourceResponse mirrored = WebResourcePrefetcher.getInstance().getMirroredResponse(url);
+                    if (mirrored != null) {
+                        return metrics.record(url, false, RequestMetrics.Source.MIRROR, interceptStart, mirrored);
+                    }
                 }
                 
                 // 如果内存里没有，继续执行默认的网络加载
-                return super.shouldInterceptRequest(view, request);
+                return metrics.record(url, mainFrame, RequestMetrics.Source.WEBVIEW, interceptStart,
+                        super.shouldInterceptRequest(view, request));
             }
             
             @Override
@@ -509,6 +649,10 @@ public class MainActivity extends BaseActivity {
             public void onPageStarted(WebView view, String url, Bitmap favicon) {
                 super.onPageStarted(view, url, favicon);
                 Log.d(TAG, "页面开始加载: " + url);
+                // 主页面开始加载，取消统计、验证码等低优先级预加载
+                WebResourcePrefetcher.getInstance().onMainFrameStarted();
+                WebResourcePrefetcher.getInstance().setWebViewUserAgent(view.getSettings().getUserAgentString());
+                pageLoadedOffline = WebResourcePrefetcher.getInstance().isOffline();
                 progressBar.setVisibility(View.VISIBLE);
                 progressBar.setProgress(0);
             }
@@ -517,8 +661,12 @@ public class MainActivity extends BaseActivity {
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
                 Log.d(TAG, "页面加载完成: " + url);
+                Log.d(TAG, WebResourcePrefetcher.getInstance().getPreconnectStats());
+                WebResourcePrefetcher.getInstance().onMainFrameFinished(url);
                 progressBar.setVisibility(View.GONE);
                 injectDownloadInterceptor(view);
+                injectLinkPrefetcher(view);
+                injectNetworkPolicy(view, WebResourcePrefetcher.getInstance().getNetworkPolicy());
                 updateNavigationButtons();
 
                 // 【新增】注入翻译SDK
@@ -546,9 +694,15 @@ public class MainActivity extends BaseActivity {
                     Log.e(TAG, "错误: " + error.getErrorCode() + " - " + error.getDescription());
                 }
                 if (request.isForMainFrame()) {
+                    // 连接层面的失败计入网络可用性判断（未通过验证的网络上连续失败才进入离线）
+                    int code = error.getErrorCode();
+                    if (code == ERROR_HOST_LOOKUP || code == ERROR_CONNECT || code == ERROR_TIMEOUT) {
+                        ConnectivityMonitor.getInstance(MainActivity.this).reportRequestFailure();
+                    }
+                    boolean offline = WebResourcePrefetcher.getInstance().isOffline();
                     runOnUiThread(() -> 
                         Toast.makeText(MainActivity.this, 
-                            "页面加载失败", Toast.LENGTH_LONG).show()
+                            offline ? "当前处于离线状态" : "页面加载失败", Toast.LENGTH_LONG).show()
                     );
                 }
             }
@@ -769,7 +923,7 @@ public class MainActivity extends BaseActivity {
                 }
                 return false;
             } else if (id == R.id.navigation_refresh) {
-                webView.reload();
+                reloadFromNetwork();
                 return false;
             } else if (id == R.id.navigation_download) {
                 // 假设 DownloadsActivity 存在
@@ -823,6 +977,120 @@ public class MainActivity extends BaseActivity {
         Log.d(TAG, "注入下载拦截器");
     }
 
+    /**
+     * 网络断开时 WebView 只读缓存；恢复后改回默认模式，并重新加载离线时打开的页面
+     */
+    private void onConnectivityChanged(boolean online) {
+        if (webView == null) return;
+        webView.getSettings().setCacheMode(online ? WebSettings.LOAD_DEFAULT : WebSettings.LOAD_CACHE_ONLY);
+        if (!online) {
+            Toast.makeText(this, "网络已断开，正在使用离线缓存", Toast.LENGTH_SHORT).show();
+        } else if (pageLoadedOffline) {
+            Log.d(TAG, "网络已恢复，重新加载页面");
+            reloadFromNetwork();
+        }
+    }
+
+    /**
+     * 重新加载当前页面，跳过缓存的 HTML（用户主动刷新时需要看到最新内容）
+     */
+    private void reloadFromNetwork() {
+        reloadFromNetworkUrl = webView.getUrl();
+        webView.reload();
+    }
+
+    /**
+     * 网络策略变化：更新媒体自动播放设置，并通知当前页面
+     */
+    private void onNetworkPolicyChanged(NetworkPolicy policy) {
+        if (webView == null) return;
+        webView.getSettings().setMediaPlaybackRequiresUserGesture(!policy.allowMediaAutoplay());
+        injectNetworkPolicy(webView, policy);
+    }
+
+    /**
+     * 向页面提供网络策略：window.MoelyNetworkPolicy = { level, saveData, imageQuality }，
+     * 并派发 moely:network-policy 事件，页面可据此选择图片尺寸、关闭视频自动播放
+     */
+    private void injectNetworkPolicy(WebView webView, NetworkPolicy policy) {
+        String script = "(function() { " +
+                "    window.MoelyNetworkPolicy = { level: '" + policy.level.name().toLowerCase(Locale.ROOT) + "', " +
+                "saveData: " + policy.saveData() + ", imageQuality: '" + policy.imageQuality() + "' }; " +
+                "    window.dispatchEvent(new CustomEvent('moely:network-policy', { detail: window.MoelyNetworkPolicy })); " +
+                "})();";
+        webView.evaluateJavascript(script, null);
+    }
+
+    /**
+     * 当前显示的缓存页面在后台有了新版本：
+     * 先向页面派发 moely:content-updated 事件，页面可以调用 preventDefault() 自行处理；
+     * 页面没有处理且用户还没有滚动时软刷新（刷新后命中新缓存），否则提示用户
+     */
+    private void onMainFrameContentChanged(String url) {
+        if (webView == null || !url.equals(webView.getUrl())) return;
+        String script = "(function() { " +
+                "    var e = new CustomEvent('moely:content-updated', { cancelable: true }); " +
+                "    if (!window.dispatchEvent(e)) return 'handled'; " +
+                "    return window.scrollY < 50 ? 'reload' : 'notify'; " +
+                "})();";
+        webView.evaluateJavascript(script, value -> {
+            if ("\"reload\"".equals(value)) {
+                Log.d(TAG, "页面内容已更新，软刷新: " + url);
+                webView.reload();
+            } else if ("\"notify\"".equals(value)) {
+                Toast.makeText(this, "页面有更新，刷新即可查看", Toast.LENGTH_SHORT).show();
+            }
+        });
+    }
+
+    /**
+     * 注入链接预测脚本：进入视口的站内链接分批上报，按下（touchstart）的链接立即上报，
+     * 由原生层提前下载对应的 HTML 文档
+     */
+    private void injectLinkPrefetcher(WebView webView) {
+        String script = "javascript:(" +
+                "function() { " +
+                "    if (window.__moelyLinkPrefetch || !window.Android || typeof window.Android.prefetchLinks !== 'function') return; " +
+                "    window.__moelyLinkPrefetch = true; " +
+                "    var sent = new Set(); var pending = []; var timer = null; " +
+                "    function target(a) { " +
+                "        if (!a || !a.href || a.origin !== location.origin || a.target === '_blank' || a.hasAttribute('download')) return null; " +
+                "        var url = a.origin + a.pathname + a.search; " +
+                "        if (url === location.origin + location.pathname + location.search || sent.has(url)) return null; " +
+                "        return url; " +
+                "    } " +
+                "    function flush() { " +
+                "        timer = null; " +
+                "        if (pending.length) { window.Android.prefetchLinks(JSON.stringify(pending.splice(0, 4)), false, navigator.userAgent); } " +
+                "    } " +
+                "    var observer = new IntersectionObserver(function(entries) { " +
+                "        entries.forEach(function(e) { " +
+                "            if (!e.isIntersecting) return; " +
+                "            observer.unobserve(e.target); " +
+                "            var url = target(e.target); " +
+                "            if (url) { sent.add(url); pending.push(url); } " +
+                "        }); " +
+                "        if (pending.length && !timer) timer = setTimeout(flush, 300); " +
+                "    }, { threshold: 0.5 }); " +
+                "    function observeAll(root) { root.querySelectorAll('a[href]').forEach(function(a) { observer.observe(a); }); } " +
+                "    observeAll(document); " +
+                "    new MutationObserver(function(mutations) { " +
+                "        mutations.forEach(function(m) { m.addedNodes.forEach(function(n) { " +
+                "            if (n.nodeType !== 1) return; " +
+                "            if (n.tagName === 'A') observer.observe(n); else observeAll(n); " +
+                "        }); }); " +
+                "    }).observe(document.body, { childList: true, subtree: true }); " +
+                "    document.addEventListener('touchstart', function(e) { " +
+                "        var a = e.target.closest ? e.target.closest('a[href]') : null; " +
+                "        var url = target(a); " +
+                "        if (url) { sent.add(url); window.Android.prefetchLinks(JSON.stringify([url]), true, navigator.userAgent); } " +
+                "    }, { passive: true, capture: true }); " +
+                "})();";
+
+        webView.evaluateJavascript(script, null);
+        Log.d(TAG, "注入链接预测脚本");
+    }
+
     /**
      * 获取下载目标路径
      */
@@ -1241,6 +1509,25 @@ public class MainActivity extends BaseActivity {
             });
         }
 
+        /**
+         * 链接预测脚本上报的候选链接
+         * @param urlsJson 链接 URL 的 JSON 数组
+         * @param urgent 用户已按下该链接
+         */
+        @JavascriptInterface
+        public void prefetchLinks(String urlsJson, boolean urgent, String userAgent) {
+            try {
+                JSONArray array = new JSONArray(urlsJson);
+                List<String> urls = new ArrayList<>();
+                for (int i = 0; i < array.length() && i < 8; i++) {
+                    urls.add(array.getString(i));
+                }
+                WebResourcePrefetcher.getInstance().prefetchDocuments(urls, urgent, userAgent);
+            } catch (JSONException e) {
+                Log.w(TAG, "链接预测数据格式错误", e);
+            }
+        }
+
         @JavascriptInterface
         public void logError(String message) {
             Log.e(TAG, "JS 错误: " + message);
@@ -1589,6 +1876,10 @@ public class MainActivity extends BaseActivity {
             webView = null;
         }
 
+        WebResourcePrefetcher.getInstance().setMainFrameUpdateListener(null);
+        MemoryPressureCoordinator.getInstance().unregister(MEMORY_PRESSURE_WEBVIEW);
+        ConnectivityMonitor.getInstance(this).removeListener(connectivityListener);
+        ConnectivityMonitor.getInstance(this).removePolicyListener(networkPolicyListener);
         WebResourcePrefetcher.getInstance().clearCache();
         
         super.onDestroy();
@@ -0,0 +1,432 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * MainFrameHtmlCache
+ * 主页面 HTML 的 stale-while-revalidate 缓存：导航时立即返回上次成功加载的页面，
+ * 同时在后台重新请求；只有内容确实发生变化时才通知页面（或软刷新）。
+ * 判断内容变化时去掉每次请求都不同的部分（CSRF 令牌、nonce、时间戳），见 contentFingerprint。
+ * 缓存键为 URL + 与登录状态相关的 Cookie 摘要（统计类 Cookie 不参与），
+ * 登录、退出或切换账号后不会看到其他身份的页面。
+ * 没有缓存时由原生层下载页面交给 WebView，同时保存一份（fetch），页面只下载一次。
+ */
+public class MainFrameHtmlCache {
+    private static final String TAG = "MainFrameHtmlCache";
+
+    private static final String DISK_CACHE_DIR = "main_frame_html";
+    private static final String ALLOWED_HOST = "moely.link";
+    // 缓存键中 Cookie 摘要的分隔符
+    private static final String COOKIE_KEY_MARK = "#cookie=";
+
+    // 磁盘缓存上限，超出时淘汰最久未访问的页面
+    private static final long MAX_BLOB_BYTES = 8L * 1024 * 1024;
+    private static final int MAX_DOCUMENT_BYTES = 1024 * 1024;
+    // 距上次下载不足该时间时不再重新验证
+    private static final long MIN_REVALIDATE_INTERVAL_MS = 30 * 1000L;
+
+    // 不影响页面内容的 Cookie（统计、CDN），不参与缓存键
+    private static final String[] IGNORED_COOKIE_PREFIXES = {
+            "_ga", "_gid", "_gat", "_gcl", "__cf", "cf_", "_hj", "__utm"
+    };
+
+    // 元数据中保存的内容指纹
+    private static final String META_FINGERPRINT = "fingerprint";
+
+    // 每次请求都会变化、不代表内容更新的部分：CSRF 令牌、CSP nonce、10 位以上的数字（时间戳）
+    private static final Pattern[] VOLATILE_PATTERNS = {
+            Pattern.compile("(<meta[^>]+name=[\"'][^\"']*(?:csrf|token)[^\"']*[\"'][^>]*content=)[\"'][^\"']*[\"']",
+                    Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(<input[^>]+name=[\"'][^\"']*(?:csrf|token)[^\"']*[\"'][^>]*value=)[\"'][^\"']*[\"']",
+                    Pattern.CASE_INSENSITIVE),
+            Pattern.compile("(\\snonce=)[\"'][^\"']*[\"']", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("()\\b\\d{10,}\\b"),
+    };
+
+    // 页面请求不转发的 WebView 请求头（由 OkHttp 处理）
+    private static final String[] SKIPPED_REQUEST_HEADERS = {"Accept-Encoding", "Range", "Cookie"};
+
+    /**
+     * 后台重新验证发现内容发生变化时回调（在 OkHttp 线程）
+     */
+    public interface UpdateListener {
+        void onContentChanged(String url);
+    }
+
+    private final OkHttpClient client;
+    // 导航时下载页面用：不跟随重定向，重定向交给 WebView 处理
+    private final OkHttpClient navigationClient;
+    private volatile DiskResourceCache disk;
+    private volatile UpdateListener listener;
+    private volatile String userAgent;
+
+    // 正在后台请求的缓存键
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public MainFrameHtmlCache(OkHttpClient client) {
+        this.client = client;
+        this.navigationClient = client.newBuilder()
+                .followRedirects(false)
+                .followSslRedirects(false)
+                .build();
+    }
+
+    public synchronized void open(Context context) {
+        if (disk != null) return;
+        File dir = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIR);
+        DiskResourceCache cache = new DiskResourceCache(dir, MAX_BLOB_BYTES);
+        try {
+            cache.open();
+            disk = cache;
+        } catch (IOException e) {
+            Log.e(TAG, "主页面缓存初始化失败", e);
+        }
+    }
+
+    public void setUpdateListener(UpdateListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * WebView 的 User-Agent，后台请求时使用，保证拿到的页面与 WebView 一致
+     */
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * 主页面导航：有缓存时立即返回，没有缓存时返回 null
+     * @param revalidate 是否在后台重新验证（离线时为 false）
+     */
+    public WebResourceResponse serve(String url, boolean revalidate) {
+        DiskResourceCache cache = disk;
+        if (cache == null || !isCacheable(url)) return null;
+
+        String cookies = CookieManager.getInstance().getCookie(url);
+        String key = cacheKey(url, cookies);
+        DiskResourceCache.Entry cached = cache.getEntry(key);
+        if (cached == null || cached.metadata == null) return null;
+
+        CachedResource entry = CachedResource.fromMetadata(url, cached.metadata);
+        // 旧版本按子资源保存的页面没有安全策略头，不再返回，由 fetch 重新下载后替换
+        if (!entry.headers.document) return null;
+        if (revalidate && System.currentTimeMillis() - entry.fetchedAt >= MIN_REVALIDATE_INTERVAL_MS) {
+            refresh(url, key, cookies, entry, cached.metadata.get(META_FINGERPRINT));
+        }
+        Log.d(TAG, "主页面使用缓存 (" + entry.size() + "/" + entry.rawSize + " bytes): " + url);
+        ResourceHeaders headers = entry.headers;
+        return new WebResourceResponse(headers.mimeType, headers.charset, 200, "OK",
+                headers.responseHeaders, entry.decode(new ByteBufferInputStream(cached.data)));
+    }
+
+    /**
+     * 主页面导航且没有可用缓存：由原生层下载页面交给 WebView，同时保存一份，页面只下载一次
+     * 拦截响应中的 Set-Cookie 不会被 WebView 处理，这里写入 CookieManager，这类页面不保存
+     * 重定向、非 HTML、过大或请求失败时返回 null，由 WebView 自己加载
+     * 注意：阻塞等待网络，只能在 shouldInterceptRequest 等后台线程调用
+     * @param requestHeaders WebView 的请求头（原样转发）
+     */
+    public WebResourceResponse fetch(String url, Map<String, String> requestHeaders) {
+        DiskResourceCache cache = disk;
+        if (cache == null || !isCacheable(url)) return null;
+
+        CookieManager cookieManager = CookieManager.getInstance();
+        String cookies = cookieManager.getCookie(url);
+        Request.Builder builder = new Request.Builder().url(url);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                if (!isSkippedRequestHeader(header.getKey())) {
+                    builder.header(header.getKey(), header.getValue());
+                }
+            }
+        }
+        if (cookies != null && !cookies.isEmpty()) {
+            builder.header("Cookie", cookies);
+        }
+        String ua = userAgent;
+        if (ua != null && (requestHeaders == null || MediaRangeCache.header(requestHeaders, "User-Agent") == null)) {
+            builder.header("User-Agent", ua);
+        }
+
+        try (Response response = navigationClient.newCall(builder.build()).execute()) {
+            ResponseBody body = response.body();
+            if (response.isRedirect() || body == null) return null;
+            MediaType contentType = body.contentType();
+            if (contentType == null || !"html".equals(contentType.subtype())) return null;
+            if (body.contentLength() > MAX_DOCUMENT_BYTES) return null;
+            byte[] bytes = body.bytes();
+
+            List<String> setCookies = response.headers("Set-Cookie");
+            for (String setCookie : setCookies) {
+                cookieManager.setCookie(url, setCookie);
+            }
+            CachedResource fresh = CachedResource.fromDocumentResponse(url, response, bytes);
+            if (response.code() == 200 && setCookies.isEmpty() && !response.cacheControl().noStore()
+                    && bytes.length <= MAX_DOCUMENT_BYTES) {
+                store(cache, cacheKey(url, cookies), url, fresh, fingerprint(bytes));
+                Log.d(TAG, "主页面已下载并保存 (" + bytes.length + " bytes): " + url);
+            }
+            ResourceHeaders headers = fresh.headers;
+            String reason = response.message().isEmpty() ? "OK" : response.message();
+            return new WebResourceResponse(headers.mimeType, headers.charset, response.code(), reason,
+                    headers.responseHeaders, new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            Log.w(TAG, "主页面下载失败，交给 WebView 加载: " + url + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 离线且没有缓存时显示的页面，网络恢复后由 Activity 重新加载
+     */
+    public static WebResourceResponse offlinePage() {
+        String html = "<!DOCTYPE html><html><head><meta charset=\"utf-8\">"
+                + "<meta name=\"viewport\" content=\"width=device-width, initial-scale=1\">"
+                + "<title>离线</title></head>"
+                + "<body style=\"font-family:sans-serif;text-align:center;padding-top:30vh;color:#666\">"
+                + "<h3>当前处于离线状态</h3><p>该页面尚未缓存，网络恢复后将自动重新加载。</p>"
+                + "</body></html>";
+        Map<String, String> headers = Collections.singletonMap("Cache-Control", "no-store");
+        return new WebResourceResponse("text/html", "UTF-8", 503, "Offline", headers,
+                new ByteArrayInputStream(html.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public void clear() {
+        DiskResourceCache cache = disk;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 后台重新验证所有已缓存的页面（后台预热时调用）
+     * 只处理与当前登录状态对应的缓存，其他身份的页面无法带上对应的 Cookie
+     * @return 发起请求的页面数
+     */
+    public int revalidateAll() {
+        DiskResourceCache cache = disk;
+        if (cache == null) return 0;
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (String key : new ArrayList<>(cache.keys())) {
+            int cookieMark = key.indexOf(COOKIE_KEY_MARK);
+            String url = cookieMark >= 0 ? key.substring(0, cookieMark) : key;
+            String cookies = CookieManager.getInstance().getCookie(url);
+            if (!key.equals(cacheKey(url, cookies))) continue;
+            Map<String, String> meta = cache.getMetadata(key);
+            if (meta == null) continue;
+            CachedResource entry = CachedResource.fromMetadata(url, meta);
+            if (now - entry.fetchedAt < MIN_REVALIDATE_INTERVAL_MS) continue;
+            refresh(url, key, cookies, entry, meta.get(META_FINGERPRINT));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 没有进行中的后台请求
+     */
+    public boolean isIdle() {
+        return refreshing.isEmpty();
+    }
+
+    /**
+     * 压缩磁盘缓存，回收被新版本覆盖的页面
+     * @return 回收的字节数
+     */
+    public long compact(long minReclaimBytes) {
+        DiskResourceCache cache = disk;
+        return cache != null ? cache.compact(minReclaimBytes) : 0;
+    }
+
+    /**
+     * 后台请求页面：304 只刷新时间；200 且内容哈希变化时保存并通知
+     */
+    private void refresh(String url, String key, String cookies, CachedResource current, String currentFingerprint) {
+        if (!refreshing.add(key)) return;
+
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Accept", "text/html,application/xhtml+xml");
+        if (cookies != null && !cookies.isEmpty()) {
+            builder.header("Cookie", cookies);
+        }
+        String ua = userAgent;
+        if (ua != null) {
+            builder.header("User-Agent", ua);
+        }
+        if (current != null) {
+            if (current.etag != null) builder.header("If-None-Match", current.etag);
+            if (current.lastModified != null) builder.header("If-Modified-Since", current.lastModified);
+        }
+
+        client.newCall(builder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                refreshing.remove(key);
+                Log.w(TAG, "主页面后台请求失败: " + url + " - " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                boolean changed = false;
+                try {
+                    changed = handleResponse(url, key, current, currentFingerprint, response);
+                } catch (IOException e) {
+                    Log.w(TAG, "主页面后台读取失败: " + url, e);
+                } finally {
+                    response.close();
+                    refreshing.remove(key);
+                }
+                UpdateListener l = listener;
+                if (changed && l != null) {
+                    l.onContentChanged(url);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return 已有缓存且内容发生了变化
+     */
+    private boolean handleResponse(String url, String key, CachedResource current, String currentFingerprint,
+                                   Response response) throws IOException {
+        DiskResourceCache cache = disk;
+        if (cache == null) return false;
+
+        if (response.code() == 304 && current != null) {
+            cache.updateMetadata(key, withFingerprint(current.revalidated(response).toMetadata(), currentFingerprint));
+            Log.d(TAG, "主页面未变化 (304): " + url);
+            return false;
+        }
+
+        ResponseBody body = response.body();
+        if (response.code() != 200 || body == null) return false;
+        // 重定向后的页面不能以原 URL 返回
+        if (!response.request().url().toString().equals(url)) return false;
+        // 缓存的页面由拦截响应返回，WebView 不会处理其中的 Set-Cookie；带 Cookie 变更的页面不保存
+        if (response.header("Set-Cookie") != null) return false;
+        if (response.cacheControl().noStore()) return false;
+        MediaType contentType = body.contentType();
+        if (contentType == null || !"html".equals(contentType.subtype())) return false;
+
+        byte[] bytes = body.bytes();
+        if (bytes.length > MAX_DOCUMENT_BYTES) return false;
+
+        CachedResource fresh = CachedResource.fromDocumentResponse(url, response, bytes);
+        if (current != null && current.sha256 != null && current.sha256.equals(fresh.sha256)) {
+            cache.updateMetadata(key, withFingerprint(current.revalidated(response).toMetadata(), currentFingerprint));
+            Log.d(TAG, "主页面内容未变化: " + url);
+            return false;
+        }
+
+        String fingerprint = fingerprint(bytes);
+        store(cache, key, url, fresh, fingerprint);
+        // 只有令牌、nonce、时间戳不同：保存新版本，但不算内容变化
+        boolean changed = current != null && !fingerprint.equals(currentFingerprint);
+        Log.d(TAG, "主页面已" + (current == null ? "保存" : changed ? "更新" : "刷新（内容未变化）")
+                + " (" + bytes.length + " bytes): " + url);
+        return changed;
+    }
+
+    private static void store(DiskResourceCache cache, String key, String url, CachedResource entry, String fingerprint) {
+        CachedResource stored = entry.compressedIfWorthwhile();
+        cache.put(key, stored.data, withFingerprint(stored.toMetadata(), fingerprint), stored.contentKey(url));
+    }
+
+    private static Map<String, String> withFingerprint(Map<String, String> meta, String fingerprint) {
+        if (fingerprint != null) {
+            meta.put(META_FINGERPRINT, fingerprint);
+        }
+        return meta;
+    }
+
+    private static String fingerprint(byte[] html) {
+        return contentFingerprint(new String(html, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 页面内容的指纹：去掉 VOLATILE_PATTERNS 匹配的部分后计算 SHA-256，
+     * 只有这些部分不同的两次响应得到相同的指纹
+     */
+    static String contentFingerprint(String html) {
+        String normalized = html;
+        for (Pattern pattern : VOLATILE_PATTERNS) {
+            normalized = pattern.matcher(normalized).replaceAll("$1\"\"");
+        }
+        return CachedResource.sha256Hex(normalized.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean isSkippedRequestHeader(String name) {
+        for (String skipped : SKIPPED_REQUEST_HEADERS) {
+            if (skipped.equalsIgnoreCase(name)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isCacheable(String url) {
+        Uri uri = Uri.parse(url);
+        if (!"https".equals(uri.getScheme()) || uri.getHost() == null) return false;
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        return host.equals(ALLOWED_HOST) || host.endsWith("." + ALLOWED_HOST);
+    }
+
+    /**
+     * URL + 与页面内容相关的 Cookie 摘要
+     */
+    static String cacheKey(String url, String cookies) {
+        String digest = relevantCookieDigest(cookies);
+        return digest.isEmpty() ? url : url + COOKIE_KEY_MARK + digest;
+    }
+
+    /**
+     * 与页面内容相关的 Cookie（去掉统计、CDN Cookie，与顺序无关）的摘要，没有时返回空字符串
+     * 同一登录状态下统计 Cookie 变化不影响摘要，DocumentPrefetchCache 也用它判断登录状态是否变化
+     */
+    static String relevantCookieDigest(String cookies) {
+        if (cookies == null || cookies.isEmpty()) return "";
+        List<String> relevant = new ArrayList<>();
+        for (String pair : cookies.split(";")) {
+            String trimmed = pair.trim();
+            if (!trimmed.isEmpty() && !isIgnoredCookie(trimmed)) {
+                relevant.add(trimmed);
+            }
+        }
+        if (relevant.isEmpty()) return "";
+        Collections.sort(relevant);
+        String digest = CachedResource.sha256Hex(String.join(";", relevant).getBytes(StandardCharsets.UTF_8));
+        return digest.substring(0, 16);
+    }
+
+    private static boolean isIgnoredCookie(String pair) {
+        for (String prefix : IGNORED_COOKIE_PREFIXES) {
+            if (pair.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,512 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * MediaRangeCache
+ * 音频、视频的分段缓存，处理 WebView 发出的 Range 请求（拖动进度条时的跳转）。
+ * 每个媒体文件对应一个目录，按固定大小分块保存（chunk-N），已有的块直接从映射的文件返回，
+ * 缺少的块在读取到时才按块向源站发起 Range 请求并保存，因此返回的 206 响应是按需拉取的流。
+ * 源站不支持 Range（返回 200）的 URL 交给 WebView 自己加载。
+ * 块数据带上源站的 ETag / Last-Modified，源站文件发生变化时丢弃整个条目。
+ */
+public class MediaRangeCache {
+    private static final String TAG = "MediaRangeCache";
+
+    private static final String CACHE_DIR = "media_ranges";
+    private static final String META_FILE = "meta";
+    private static final String CHUNK_PREFIX = "chunk-";
+
+    // 每块大小：一次 Range 请求的数据量
+    static final int CHUNK_SIZE = 256 * 1024;
+    // 所有媒体块的总字节上限，超出时按最久未使用淘汰整个文件
+    private static final long MAX_TOTAL_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * 一个媒体文件的元数据，块是否存在以文件为准
+     */
+    private static final class Entry {
+        final File dir;
+        final long totalLength;
+        final String mimeType;
+        // ETag，没有时为 Last-Modified，都没有时为空字符串
+        final String validator;
+
+        Entry(File dir, long totalLength, String mimeType, String validator) {
+            this.dir = dir;
+            this.totalLength = totalLength;
+            this.mimeType = mimeType;
+            this.validator = validator;
+        }
+
+        File chunkFile(long index) {
+            return new File(dir, CHUNK_PREFIX + index);
+        }
+
+        int chunkLength(long index) {
+            return (int) Math.min(CHUNK_SIZE, totalLength - index * CHUNK_SIZE);
+        }
+    }
+
+    private final OkHttpClient client;
+    private volatile File root;
+    private volatile String userAgent;
+    private volatile boolean offline;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    // 不支持 Range 的 URL，本次运行期间不再尝试
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong cachedBytesServed = new AtomicLong();
+    private final AtomicLong networkBytes = new AtomicLong();
+
+    public MediaRangeCache(OkHttpClient client) {
+        this.client = client;
+    }
+
+    public synchronized void open(Context context) {
+        if (root != null) return;
+        File dir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "媒体缓存目录创建失败");
+            return;
+        }
+        long total = 0;
+        File[] mediaDirs = dir.listFiles();
+        if (mediaDirs != null) {
+            for (File mediaDir : mediaDirs) {
+                total += sizeOf(mediaDir);
+            }
+        }
+        storedBytes.set(total);
+        root = dir;
+        Log.d(TAG, "媒体缓存已打开，占用 " + total + " bytes");
+    }
+
+    public void setUserAgent(String userAgent) {
+        this.userAgent = userAgent;
+    }
+
+    /**
+     * 离线时只返回已缓存的块，读到缺失的块时读取失败
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * 是否按媒体分段缓存处理（按 URL 后缀判断的音频、视频）
+     */
+    public static boolean isMedia(String url) {
+        String mimeType = ResourceHeaders.guessMimeType(url);
+        return mimeType.startsWith("audio/") || mimeType.startsWith("video/");
+    }
+
+    /**
+     * 处理一次 Range 请求，返回 206 响应；无法处理时返回 null，由 WebView 自己加载
+     * 注意：第一次访问时会同步请求第一个块，只能在 shouldInterceptRequest 等后台线程调用
+     * @param requestHeaders WebView 请求头（用于转发 Referer）
+     */
+    public WebResourceResponse serve(String url, String rangeHeader, Map<String, String> requestHeaders) {
+        if (root == null || unsupported.contains(url)) return null;
+
+        Entry entry = entryFor(url);
+        if (entry == null) {
+            if (offline) return null;
+            try {
+                entry = probe(url, requestHeaders);
+            } catch (IOException e) {
+                Log.w(TAG, "媒体首块请求失败: " + url + " - " + e.getMessage());
+                return null;
+            }
+            if (entry == null) return null;
+        }
+
+        long[] range = parseRange(rangeHeader, entry.totalLength);
+        if (range == null) return null;
+        entry.dir.setLastModified(System.currentTimeMillis());
+
+        String referer = header(requestHeaders, "Referer");
+        InputStream data = new RangeStream(url, entry, range[0], range[1], referer);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Access-Control-Allow-Origin", "*");
+        return partialResponse(entry.mimeType, headers, range[0], range[1], entry.totalLength, data);
+    }
+
+    public void clear() {
+        entries.clear();
+        unsupported.clear();
+        File dir = root;
+        if (dir == null) return;
+        File[] mediaDirs = dir.listFiles();
+        if (mediaDirs != null) {
+            for (File mediaDir : mediaDirs) {
+                deleteRecursively(mediaDir);
+            }
+        }
+        storedBytes.set(0);
+    }
+
+    public String describeStats() {
+        return "媒体分段缓存: 占用 " + storedBytes.get() + " bytes，缓存返回 " + cachedBytesServed.get()
+                + " bytes，网络下载 " + networkBytes.get() + " bytes";
+    }
+
+    /**
+     * 构建 206 响应；headers 会被补上 Content-Range 等分段相关的头
+     */
+    static WebResourceResponse partialResponse(String mimeType, Map<String, String> headers,
+                                               long start, long end, long total, InputStream data) {
+        headers.put("Content-Range", "bytes " + start + "-" + end + "/" + total);
+        headers.put("Content-Length", String.valueOf(end - start + 1));
+        headers.put("Accept-Ranges", "bytes");
+        return new WebResourceResponse(mimeType, null, 206, "Partial Content", headers, data);
+    }
+
+    /**
+     * 解析单段 Range 头（bytes=a-b、bytes=a-、bytes=-n）
+     * @return {起始, 结束}（包含），多段或无法满足的范围返回 null
+     */
+    static long[] parseRange(String header, long total) {
+        if (header == null || total <= 0) return null;
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) return null;
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                start = Math.max(0, total - suffix);
+                end = total - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? total - 1 : Math.min(Long.parseLong(last), total - 1);
+            }
+            if (start < 0 || start > end) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 按需读取 [start, end] 的流：逐块从磁盘映射读取，缺少的块先从网络下载
+     */
+    private final class RangeStream extends InputStream {
+        private final String url;
+        private final Entry entry;
+        private final String referer;
+        private long position;
+        private final long end;
+        private ByteBuffer current;
+
+        RangeStream(String url, Entry entry, long start, long end, String referer) {
+            this.url = url;
+            this.entry = entry;
+            this.referer = referer;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (position > end) return -1;
+            if (current == null || !current.hasRemaining()) {
+                current = chunkAt(position);
+            }
+            int count = (int) Math.min(Math.min(len, current.remaining()), end - position + 1);
+            current.get(b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * 定位到 position 所在的块，返回从 position 开始的切片
+         */
+        private ByteBuffer chunkAt(long pos) throws IOException {
+            long index = pos / CHUNK_SIZE;
+            ByteBuffer chunk = readChunk(entry, index);
+            if (chunk != null) {
+                cachedBytesServed.addAndGet(chunk.remaining());
+            } else {
+                if (offline) throw new IOException("离线状态，媒体块未缓存: " + url);
+                chunk = fetchChunk(url, entry, index, referer);
+            }
+            chunk.position((int) (pos - index * CHUNK_SIZE));
+            return chunk;
+        }
+    }
+
+    private Entry entryFor(String url) {
+        Entry entry = entries.get(url);
+        if (entry != null) return entry;
+        File dir = dirFor(url);
+        if (dir == null) return null;
+        File metaFile = new File(dir, META_FILE);
+        if (!metaFile.exists()) return null;
+        Properties meta = new Properties();
+        try (InputStream in = new FileInputStream(metaFile)) {
+            meta.load(in);
+            entry = new Entry(dir, Long.parseLong(meta.getProperty("total")),
+                    meta.getProperty("mime"), meta.getProperty("validator", ""));
+        } catch (IOException | NumberFormatException | NullPointerException e) {
+            Log.w(TAG, "媒体缓存元数据损坏，丢弃: " + url);
+            evict(url, dir);
+            return null;
+        }
+        entries.put(url, entry);
+        return entry;
+    }
+
+    /**
+     * 第一次访问：请求第一个块，确认源站支持 Range 并得到文件总长度
+     */
+    private Entry probe(String url, Map<String, String> requestHeaders) throws IOException {
+        File dir = dirFor(url);
+        if (dir == null) return null;
+        try (Response response = client.newCall(chunkRequest(url, 0, header(requestHeaders, "Referer"))).execute()) {
+            long total = totalFromContentRange(response.header("Content-Range"));
+            ResponseBody body = response.body();
+            if (response.code() != 206 || total <= 0 || body == null) {
+                // 源站返回了完整文件或长度未知，交给 WebView 自己处理
+                unsupported.add(url);
+                Log.d(TAG, "源站不支持 Range，不做分段缓存: " + url);
+                return null;
+            }
+            MediaType contentType = body.contentType();
+            String mimeType = contentType != null
+                    ? contentType.type() + "/" + contentType.subtype()
+                    : ResourceHeaders.guessMimeType(url);
+            Entry entry = new Entry(dir, total, mimeType, validatorOf(response));
+            if (!dir.isDirectory() && !dir.mkdirs()) return null;
+
+            Properties meta = new Properties();
+            meta.setProperty("url", url);
+            meta.setProperty("total", String.valueOf(total));
+            meta.setProperty("mime", mimeType);
+            meta.setProperty("validator", entry.validator);
+            try (OutputStream out = new FileOutputStream(new File(dir, META_FILE))) {
+                meta.store(out, null);
+            }
+            entries.put(url, entry);
+            storeChunk(url, entry, 0, readChunkBody(body, entry.chunkLength(0)));
+            Log.d(TAG, "开始分段缓存媒体 (" + total + " bytes): " + url);
+            return entry;
+        }
+    }
+
+    /**
+     * 从磁盘映射读取一个块，不存在或长度不符时返回 null
+     */
+    private ByteBuffer readChunk(Entry entry, long index) {
+        File file = entry.chunkFile(index);
+        if (!file.exists()) return null;
+        try (RandomAccessFile access = new RandomAccessFile(file, "r");
+             FileChannel channel = access.getChannel()) {
+            int expected = entry.chunkLength(index);
+            if (channel.size() != expected) return null;
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, expected);
+        } catch (IOException e) {
+            Log.w(TAG, "读取媒体块失败: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 向源站请求一个块并保存；源站文件已变化时丢弃整个条目
+     */
+    private ByteBuffer fetchChunk(String url, Entry entry, long index, String referer) throws IOException {
+        try (Response response = client.newCall(chunkRequest(url, index, referer)).execute()) {
+            ResponseBody body = response.body();
+            if (response.code() != 206 || body == null) {
+                throw new IOException("媒体块请求失败 (" + response.code() + "): " + url);
+            }
+            if (totalFromContentRange(response.header("Content-Range")) != entry.totalLength
+                    || !validatorOf(response).equals(entry.validator)) {
+                evict(url, entry.dir);
+                throw new IOException("媒体文件已变化，丢弃分段缓存: " + url);
+            }
+            byte[] data = readChunkBody(body, entry.chunkLength(index));
+            storeChunk(url, entry, index, data);
+            return ByteBuffer.wrap(data);
+        }
+    }
+
+    private Request chunkRequest(String url, long index, String referer) {
+        long start = index * CHUNK_SIZE;
+        Request.Builder builder = new Request.Builder()
+                .url(url)
+                .header("Range", "bytes=" + start + "-" + (start + CHUNK_SIZE - 1))
+                // 分段数据按字节偏移拼接，不能使用压缩传输
+                .header("Accept-Encoding", "identity");
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null && !cookies.isEmpty()) {
+            builder.header("Cookie", cookies);
+        }
+        String ua = userAgent;
+        if (ua != null) {
+            builder.header("User-Agent", ua);
+        }
+        if (referer != null) {
+            builder.header("Referer", referer);
+        }
+        return builder.build();
+    }
+
+    private byte[] readChunkBody(ResponseBody body, int expected) throws IOException {
+        byte[] data = body.bytes();
+        if (data.length < expected) {
+            throw new IOException("媒体块长度不足: " + data.length + " < " + expected);
+        }
+        networkBytes.addAndGet(expected);
+        return data.length == expected ? data : Arrays.copyOf(data, expected);
+    }
+
+    /**
+     * 写入临时文件后替换，读取方不会看到写了一半的块
+     */
+    private void storeChunk(String url, Entry entry, long index, byte[] data) {
+        File target = entry.chunkFile(index);
+        File tmp = new File(entry.dir, target.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(data);
+        } catch (IOException e) {
+            Log.w(TAG, "保存媒体块失败: " + target, e);
+            tmp.delete();
+            return;
+        }
+        boolean existed = target.exists();
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            return;
+        }
+        if (!existed && storedBytes.addAndGet(data.length) > MAX_TOTAL_BYTES) {
+            trim(entry.dir);
+        }
+    }
+
+    /**
+     * 超出总量上限时按目录最后使用时间淘汰，当前正在写入的文件保留
+     */
+    private synchronized void trim(File keep) {
+        File dir = root;
+        if (dir == null) return;
+        File[] mediaDirs = dir.listFiles();
+        if (mediaDirs == null) return;
+        Arrays.sort(mediaDirs, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File mediaDir : mediaDirs) {
+            if (storedBytes.get() <= MAX_TOTAL_BYTES) break;
+            if (mediaDir.equals(keep)) continue;
+            entries.values().removeIf(e -> e.dir.equals(mediaDir));
+            storedBytes.addAndGet(-sizeOf(mediaDir));
+            deleteRecursively(mediaDir);
+        }
+        Log.d(TAG, "媒体缓存超出上限，淘汰后占用 " + storedBytes.get() + " bytes");
+    }
+
+    private void evict(String url, File dir) {
+        entries.remove(url);
+        storedBytes.addAndGet(-sizeOf(dir));
+        deleteRecursively(dir);
+    }
+
+    private File dirFor(String url) {
+        File dir = root;
+        if (dir == null) return null;
+        String hash = CachedResource.sha256Hex(url.getBytes(StandardCharsets.UTF_8));
+        return new File(dir, hash.substring(0, 32));
+    }
+
+    /**
+     * Content-Range: bytes a-b/total，总长度未知（*）或格式不符时返回 -1
+     */
+    static long totalFromContentRange(String contentRange) {
+        if (contentRange == null) return -1;
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) return -1;
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String validatorOf(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null) return etag;
+        String lastModified = response.header("Last-Modified");
+        return lastModified != null ? lastModified : "";
+    }
+
+    static String header(Map<String, String> headers, String name) {
+        if (headers == null) return null;
+        for (Map.Entry<String, String> h : headers.entrySet()) {
+            if (name.equalsIgnoreCase(h.getKey())) return h.getValue();
+        }
+        return null;
+    }
+
+    private static long sizeOf(File dir) {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.startsWith(CHUNK_PREFIX) && !name.endsWith(".tmp")) size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,227 @@
+package link.moely.mobile;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * MemoryPressureCoordinator
+ * 统一响应系统的内存压力回调（onTrimMemory / onLowMemory）。
+ * 各原生缓存以名称、优先级和收缩回调登记；收到回调时按级别分阶段收缩，每个阶段按优先级从低到高依次调用：
+ * - DROP_DECODED：丢弃可重建的副本（磁盘上已有的未压缩内存副本、解析过的元数据和索引）
+ * - DEMOTE_TO_DISK：把大部分内存内容降级写入磁盘
+ * - RELEASE：释放全部可释放的内存，并调用 WebView 的内存释放钩子
+ * 级别越高执行的阶段越多（前面的阶段也会执行），每个阶段释放的字节数写入日志。
+ * 收缩在后台线程执行，回调中的磁盘写入不阻塞主线程。
+ */
+public class MemoryPressureCoordinator implements ComponentCallbacks2 {
+    private static final String TAG = "MemoryPressure";
+
+    // 常用优先级：推测性预加载最先收缩，WebView 自身的缓存最后
+    public static final int PRIORITY_SPECULATIVE = 0;
+    public static final int PRIORITY_RESOURCE_CACHE = 10;
+    public static final int PRIORITY_WEBVIEW = 100;
+
+    /**
+     * 收缩阶段，按代价从低到高排列
+     */
+    public enum Stage {
+        DROP_DECODED,
+        DEMOTE_TO_DISK,
+        RELEASE
+    }
+
+    /**
+     * 收缩回调
+     */
+    public interface Trimmable {
+        /**
+         * 在指定阶段收缩（可能在后台线程调用）
+         * @return 释放的字节数，无法统计时返回 0
+         */
+        long trim(Stage stage);
+    }
+
+    private static final class Registration {
+        final String name;
+        final int priority;
+        final Trimmable trimmable;
+
+        Registration(String name, int priority, Trimmable trimmable) {
+            this.name = name;
+            this.priority = priority;
+            this.trimmable = trimmable;
+        }
+    }
+
+    private static volatile MemoryPressureCoordinator instance;
+
+    // 按优先级升序，由 this 保护
+    private final List<Registration> registrations = new ArrayList<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MemoryTrim");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean attached;
+
+    private final Map<Stage, AtomicLong> releasedBytes = new EnumMap<>(Stage.class);
+    private final AtomicLong trimCount = new AtomicLong();
+    private volatile int lastLevel = -1;
+
+    private MemoryPressureCoordinator() {
+        for (Stage stage : Stage.values()) {
+            releasedBytes.put(stage, new AtomicLong());
+        }
+    }
+
+    public static MemoryPressureCoordinator getInstance() {
+        if (instance == null) {
+            synchronized (MemoryPressureCoordinator.class) {
+                if (instance == null) {
+                    instance = new MemoryPressureCoordinator();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 向 Application 注册系统回调，重复调用无副作用
+     */
+    public synchronized void attach(Context context) {
+        if (attached) return;
+        attached = true;
+        context.getApplicationContext().registerComponentCallbacks(this);
+    }
+
+    /**
+     * 登记一个缓存；同名登记会替换原有的
+     * @param priority 越小越先收缩（推测性、易重建的缓存用较小的值）
+     */
+    public synchronized void register(String name, int priority, Trimmable trimmable) {
+        unregisterLocked(name);
+        int index = 0;
+        while (index < registrations.size() && registrations.get(index).priority <= priority) {
+            index++;
+        }
+        registrations.add(index, new Registration(name, priority, trimmable));
+    }
+
+    public synchronized void unregister(String name) {
+        unregisterLocked(name);
+    }
+
+    private void unregisterLocked(String name) {
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).name.equals(name)) {
+                registrations.remove(i);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        Stage stage = stageFor(level);
+        if (stage == null) return;
+        lastLevel = level;
+        executor.execute(() -> trim(stage, "onTrimMemory(" + level + ")"));
+    }
+
+    @Override
+    public void onLowMemory() {
+        lastLevel = TRIM_MEMORY_COMPLETE;
+        executor.execute(() -> trim(Stage.RELEASE, "onLowMemory"));
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+
+    /**
+     * 系统回调级别对应的最高收缩阶段；不需要收缩时返回 null
+     */
+    static Stage stageFor(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            // 进程在后台 LRU 列表中部或更靠后，随时可能被杀
+            return Stage.RELEASE;
+        }
+        if (level >= TRIM_MEMORY_BACKGROUND) {
+            return Stage.DEMOTE_TO_DISK;
+        }
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            return Stage.DROP_DECODED;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            return Stage.RELEASE;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            return Stage.DEMOTE_TO_DISK;
+        }
+        if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            return Stage.DROP_DECODED;
+        }
+        return null;
+    }
+
+    /**
+     * 依次执行到指定阶段为止的所有阶段
+     * @return 释放的总字节数
+     */
+    public long trim(Stage upTo, String reason) {
+        List<Registration> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(registrations);
+        }
+        trimCount.incrementAndGet();
+        long total = 0;
+        StringBuilder detail = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            if (stage.ordinal() > upTo.ordinal()) break;
+            long stageBytes = 0;
+            detail.setLength(0);
+            for (Registration registration : snapshot) {
+                long released;
+                try {
+                    released = Math.max(0, registration.trimmable.trim(stage));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, registration.name + " 收缩失败 (" + stage + ")", e);
+                    continue;
+                }
+                if (released > 0) {
+                    if (detail.length() > 0) detail.append("，");
+                    detail.append(registration.name).append(' ').append(released);
+                }
+                stageBytes += released;
+            }
+            releasedBytes.get(stage).addAndGet(stageBytes);
+            total += stageBytes;
+            Log.d(TAG, reason + " " + stage + ": 释放 " + stageBytes + " bytes"
+                    + (detail.length() > 0 ? "（" + detail + "）" : ""));
+        }
+        Log.d(TAG, reason + " 共释放 " + total + " bytes");
+        return total;
+    }
+
+    public String describeStats() {
+        StringBuilder sb = new StringBuilder("内存压力: 收缩 ").append(trimCount.get()).append(" 次");
+        int level = lastLevel;
+        if (level >= 0) {
+            sb.append("（最近级别 ").append(level).append("）");
+        }
+        for (Stage stage : Stage.values()) {
+            sb.append("，").append(stage).append(' ').append(releasedBytes.get(stage).get()).append(" bytes");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,78 @@
+package link.moely.mobile;
+
+import android.os.Bundle;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.material.appbar.MaterialToolbar;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 请求统计（调试页面）
+ * 显示 WebView 请求路径的命中率、拦截耗时（RequestMetrics）和各缓存组件的统计，可导出为文本文件
+ */
+public class MetricsActivity extends BaseActivity {
+
+    private TextView metricsTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_metrics);
+
+        MaterialToolbar toolbar = findViewById(R.id.toolbar_metrics);
+        ThemeUtils.applyThemeToToolbar(toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+            getSupportActionBar().setDisplayShowHomeEnabled(true);
+        }
+        toolbar.setNavigationOnClickListener(v -> onBackPressed());
+
+        metricsTextView = findViewById(R.id.tv_metrics);
+
+        findViewById(R.id.btn_metrics_refresh).setOnClickListener(v -> refresh());
+        findViewById(R.id.btn_metrics_reset).setOnClickListener(v -> {
+            RequestMetrics.getInstance().reset();
+            refresh();
+        });
+        findViewById(R.id.btn_metrics_export).setOnClickListener(v -> export());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        refresh();
+    }
+
+    private void refresh() {
+        metricsTextView.setText(RequestMetrics.getInstance().describe() + "\n" + describeComponents());
+    }
+
+    private void export() {
+        try {
+            File file = RequestMetrics.getInstance().dumpToFile(this, describeComponents());
+            Toast.makeText(this, getString(R.string.metrics_exported, file.getAbsolutePath()), Toast.LENGTH_LONG).show();
+        } catch (IOException e) {
+            Toast.makeText(this, getString(R.string.metrics_export_failed, e.getMessage()), Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * 各缓存组件自身的统计
+     */
+    private static String describeComponents() {
+        WebResourcePrefetcher prefetcher = WebResourcePrefetcher.getInstance();
+        return "== 缓存组件 ==\n"
+                + prefetcher.getPreconnectStats() + "\n"
+                + prefetcher.getCompressionStats() + "\n"
+                + prefetcher.getDedupStats() + "\n"
+                + prefetcher.getBundledAssetStats() + "\n"
+                + prefetcher.getMediaCacheStats() + "\n"
+                + prefetcher.getMirrorStats() + "\n"
+                + prefetcher.getImageTranscodeStats() + "\n"
+                + MemoryPressureCoordinator.getInstance().describeStats() + "\n";
+    }
+}
@@ -0,0 +1,242 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * NavigationTraceRecorder
+ * 按页面模板记录每次主页面导航加载的子资源（脚本、样式、图片、字体），保存到磁盘。
+ * 页面模板由 URL 归一化得到，例如 /article/12345 与 /article/678 属于同一模板 /article/*。
+ * 下次导航到同一模板的页面时，按出现频率预测最可能用到的子资源，交给预加载器提前下载。
+ */
+public class NavigationTraceRecorder {
+    private static final String TAG = "NavigationTrace";
+
+    private static final String TRACE_FILE = "navigation-traces.json";
+
+    // 最多记录的模板数，超出时淘汰最久未访问的
+    private static final int MAX_TEMPLATES = 64;
+    // 每个模板最多保留的子资源数，超出时淘汰出现次数最少的
+    private static final int MAX_RESOURCES_PER_TEMPLATE = 48;
+    // 每次导航最多预测的资源数
+    private static final int MAX_PREDICTIONS = 8;
+    // 至少在一半的导航中出现过才预测
+    private static final double MIN_HIT_RATIO = 0.5;
+    // 至少记录过这么多次导航才开始预测
+    private static final int MIN_NAVIGATIONS = 2;
+
+    private final Gson gson = new Gson();
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+    // 以下状态均由 this 保护；按访问顺序排列，用于淘汰
+    private final LinkedHashMap<String, Trace> traces = new LinkedHashMap<>(16, 0.75f, true);
+    private String currentTemplate;
+    private final Set<String> currentSeen = new HashSet<>();
+    private boolean dirty;
+    private File file;
+
+    /**
+     * 一个页面模板的记录
+     */
+    private static final class Trace {
+        @SerializedName("navigations")
+        int navigations;
+        @SerializedName("resources")
+        Map<String, Integer> resources = new LinkedHashMap<>();
+    }
+
+    /**
+     * 磁盘文件格式
+     */
+    private static final class TraceFile {
+        @SerializedName("templates")
+        Map<String, Trace> templates;
+    }
+
+    /**
+     * 从磁盘载入记录，之后的变化会在 saveAsync 时写回
+     */
+    public void load(Context context) {
+        File traceFile = new File(context.getApplicationContext().getFilesDir(), TRACE_FILE);
+        ioExecutor.execute(() -> {
+            TraceFile loaded = null;
+            if (traceFile.exists()) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(traceFile), StandardCharsets.UTF_8)) {
+                    loaded = gson.fromJson(reader, TraceFile.class);
+                } catch (IOException | JsonParseException e) {
+                    Log.w(TAG, "读取导航记录失败，重新开始记录", e);
+                }
+            }
+            synchronized (this) {
+                file = traceFile;
+                if (loaded != null && loaded.templates != null) {
+                    for (Map.Entry<String, Trace> entry : loaded.templates.entrySet()) {
+                        Trace trace = entry.getValue();
+                        if (trace != null && trace.resources != null) {
+                            traces.putIfAbsent(entry.getKey(), trace);
+                        }
+                    }
+                }
+                Log.d(TAG, "已载入 " + traces.size() + " 个页面模板的导航记录");
+            }
+        });
+    }
+
+    /**
+     * 主页面开始导航：开始记录新页面，并返回该模板预测会用到的子资源
+     */
+    public synchronized List<String> beginNavigation(String url) {
+        currentTemplate = templateFor(url);
+        currentSeen.clear();
+        if (currentTemplate == null) return Collections.emptyList();
+
+        Trace trace = traces.get(currentTemplate);
+        List<String> predicted = trace != null ? predict(trace) : Collections.emptyList();
+        if (trace == null) {
+            trace = new Trace();
+            traces.put(currentTemplate, trace);
+            trimTemplates();
+        }
+        trace.navigations++;
+        dirty = true;
+        return predicted;
+    }
+
+    /**
+     * 记录当前页面加载的子资源，每次导航同一资源只计一次
+     */
+    public synchronized void recordSubresource(String url) {
+        if (currentTemplate == null || !isStaticResource(url)) return;
+        if (!currentSeen.add(url)) return;
+        Trace trace = traces.get(currentTemplate);
+        if (trace == null) return;
+        trace.resources.merge(url, 1, Integer::sum);
+        if (trace.resources.size() > MAX_RESOURCES_PER_TEMPLATE) {
+            trimResources(trace);
+        }
+        dirty = true;
+    }
+
+    /**
+     * 有变化时在后台写回磁盘（写临时文件后替换）
+     */
+    public void saveAsync() {
+        String json;
+        File target;
+        synchronized (this) {
+            if (!dirty || file == null) return;
+            TraceFile out = new TraceFile();
+            out.templates = new LinkedHashMap<>(traces);
+            json = gson.toJson(out);
+            target = file;
+            dirty = false;
+        }
+        ioExecutor.execute(() -> {
+            File tmp = new File(target.getPath() + ".tmp");
+            try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+                writer.write(json);
+            } catch (IOException e) {
+                Log.w(TAG, "保存导航记录失败", e);
+                return;
+            }
+            if (!tmp.renameTo(target)) {
+                Log.w(TAG, "替换导航记录文件失败");
+            }
+        });
+    }
+
+    /**
+     * URL 归一化为页面模板：保留域名和路径结构，数字、长哈希等 ID 段替换为 *，去掉查询参数
+     * @return 非 http(s) URL 返回 null
+     */
+    static String templateFor(String url) {
+        Uri uri = Uri.parse(url);
+        String scheme = uri.getScheme();
+        if (!"https".equals(scheme) && !"http".equals(scheme)) return null;
+
+        StringBuilder template = new StringBuilder(uri.getHost() != null ? uri.getHost() : "");
+        for (String segment : uri.getPathSegments()) {
+            template.append('/').append(isIdSegment(segment) ? "*" : segment);
+        }
+        if (template.indexOf("/") < 0) {
+            template.append('/');
+        }
+        return template.toString();
+    }
+
+    private static boolean isIdSegment(String segment) {
+        if (segment.length() > 24) return true; // 长 slug 或哈希
+        int digits = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i))) digits++;
+        }
+        return digits > 0 && digits * 2 >= segment.length();
+    }
+
+    /**
+     * 只记录可缓存的静态资源（按扩展名判断），接口请求和页面不记录
+     */
+    private static boolean isStaticResource(String url) {
+        if (!url.startsWith("https://")) return false;
+        String mimeType = ResourceHeaders.guessMimeType(url);
+        return !mimeType.equals("text/plain") && !mimeType.equals("text/html");
+    }
+
+    private List<String> predict(Trace trace) {
+        if (trace.navigations < MIN_NAVIGATIONS) return Collections.emptyList();
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>(trace.resources.entrySet());
+        Collections.sort(ranked, (a, b) -> Integer.compare(b.getValue(), a.getValue()));
+        List<String> predicted = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : ranked) {
+            if (predicted.size() >= MAX_PREDICTIONS) break;
+            if (entry.getValue() < trace.navigations * MIN_HIT_RATIO) break;
+            predicted.add(entry.getKey());
+        }
+        return predicted;
+    }
+
+    private void trimTemplates() {
+        while (traces.size() > MAX_TEMPLATES) {
+            String eldest = traces.keySet().iterator().next();
+            traces.remove(eldest);
+        }
+    }
+
+    private static void trimResources(Trace trace) {
+        String weakest = null;
+        int weakestCount = Integer.MAX_VALUE;
+        for (Map.Entry<String, Integer> entry : trace.resources.entrySet()) {
+            if (entry.getValue() < weakestCount) {
+                weakest = entry.getKey();
+                weakestCount = entry.getValue();
+            }
+        }
+        if (weakest != null) {
+            trace.resources.remove(weakest);
+        }
+    }
+}
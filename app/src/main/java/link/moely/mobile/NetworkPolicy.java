@@ -0,0 +1,162 @@
+package link.moely.mobile;
+
+import android.net.ConnectivityManager;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+
+/**
+ * NetworkPolicy
+ * 根据当前网络类型决定预加载深度、图片质量提示和媒体自动播放：
+ * FULL    - 不计流量的网络（Wi-Fi 等）且带宽充足：全部预加载，允许自动播放；
+ * REDUCED - 计流量的网络（移动数据）：只预加载首屏必需的资源，发送 Save-Data，需手势才播放；
+ * MINIMAL - 开启了流量节省（Data Saver）、漫游或带宽很低：只预加载阻塞渲染的资源，低质量图片。
+ */
+public final class NetworkPolicy {
+
+    public enum Level {
+        FULL, REDUCED, MINIMAL
+    }
+
+    // 低于该下行带宽估计（kbps）视为慢速网络
+    private static final int SLOW_DOWNSTREAM_KBPS = 1000;
+
+    // 没有网络信息时的默认策略
+    public static final NetworkPolicy DEFAULT = new NetworkPolicy(Level.FULL, false, false, 0);
+
+    public final Level level;
+    public final boolean metered;
+    public final boolean dataSaver;
+    // 系统估计的下行带宽，未知时为 0
+    public final int downstreamKbps;
+
+    private NetworkPolicy(Level level, boolean metered, boolean dataSaver, int downstreamKbps) {
+        this.level = level;
+        this.metered = metered;
+        this.dataSaver = dataSaver;
+        this.downstreamKbps = downstreamKbps;
+    }
+
+    /**
+     * 由网络能力和后台流量限制状态计算策略
+     */
+    public static NetworkPolicy evaluate(ConnectivityManager connectivityManager, NetworkCapabilities capabilities) {
+        if (capabilities == null) return DEFAULT;
+
+        boolean metered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)
+                && !isTemporarilyNotMetered(capabilities);
+        boolean roaming = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_ROAMING);
+        // 只有计流量的网络上 Data Saver 才会生效
+        boolean dataSaver = metered && connectivityManager != null
+                && connectivityManager.getRestrictBackgroundStatus()
+                == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+        int downstreamKbps = capabilities.getLinkDownstreamBandwidthKbps();
+        boolean slow = downstreamKbps > 0 && downstreamKbps < SLOW_DOWNSTREAM_KBPS;
+
+        Level level;
+        if (dataSaver || roaming || slow) {
+            level = Level.MINIMAL;
+        } else if (metered) {
+            level = Level.REDUCED;
+        } else {
+            level = Level.FULL;
+        }
+        return new NetworkPolicy(level, metered, dataSaver, downstreamKbps);
+    }
+
+    /**
+     * 运营商临时不计流量（5G 不限量套餐等）；该能力 Android 11 (API 30) 才有，之前的版本按计流量处理
+     */
+    private static boolean isTemporarilyNotMetered(NetworkCapabilities capabilities) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                && capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_TEMPORARILY_NOT_METERED);
+    }
+
+    /**
+     * 允许预加载的最低优先级（数值越大优先级越低，见 PrefetchScheduler）
+     */
+    public int maxPrefetchPriority() {
+        switch (level) {
+            case FULL:
+                return PrefetchScheduler.PRIORITY_DEFERRED;
+            case REDUCED:
+                return PrefetchScheduler.PRIORITY_CRITICAL;
+            default:
+                return PrefetchScheduler.PRIORITY_RENDER_BLOCKING;
+        }
+    }
+
+    /**
+     * 按导航记录预测时最多预加载的资源数
+     */
+    public int maxPredictions() {
+        switch (level) {
+            case FULL:
+                return 8;
+            case REDUCED:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 是否预加载进入视口的链接（用户未点击）
+     */
+    public boolean allowViewportDocumentPrefetch() {
+        return level == Level.FULL;
+    }
+
+    /**
+     * 是否预加载用户已按下的链接
+     */
+    public boolean allowTouchDocumentPrefetch() {
+        return level != Level.MINIMAL;
+    }
+
+    /**
+     * 是否向服务器发送 Save-Data 提示
+     */
+    public boolean saveData() {
+        return level != Level.FULL;
+    }
+
+    /**
+     * 提供给页面的图片质量提示：high / medium / low
+     */
+    public String imageQuality() {
+        switch (level) {
+            case FULL:
+                return "high";
+            case REDUCED:
+                return "medium";
+            default:
+                return "low";
+        }
+    }
+
+    /**
+     * 是否允许媒体无需手势自动播放
+     */
+    public boolean allowMediaAutoplay() {
+        return level == Level.FULL;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NetworkPolicy)) return false;
+        NetworkPolicy other = (NetworkPolicy) o;
+        return level == other.level && metered == other.metered && dataSaver == other.dataSaver;
+    }
+
+    @Override
+    public int hashCode() {
+        return level.hashCode() * 31 + (metered ? 2 : 0) + (dataSaver ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkPolicy{" + level + ", metered=" + metered + ", dataSaver=" + dataSaver
+                + ", downstream=" + downstreamKbps + "kbps}";
+    }
+}
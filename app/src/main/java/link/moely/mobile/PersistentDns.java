@@ -0,0 +1,196 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Dns;
+
+/**
+ * PersistentDns
+ * 带持久化的 DNS 解析：系统解析成功的结果保存到 SharedPreferences，
+ * 下次启动时直接使用，冷启动首批请求不必等待 DNS。
+ * 缓存较旧时先返回旧结果，同时在后台重新解析；太旧的缓存不再使用。
+ * 系统解析失败时回退到旧结果。
+ * 使用缓存地址连接失败时调用 invalidate 丢弃该域名的结果。
+ */
+public class PersistentDns implements Dns {
+    private static final String TAG = "PersistentDns";
+
+    private static final String PREFS_NAME = "MoelyDnsCache";
+    private static final String KEY_PREFIX = "dns:";
+
+    // 在该时间内的缓存直接使用，不再查询系统解析
+    private static final long FRESH_MS = 30 * 60 * 1000L;
+    // 超过 FRESH_MS 但在该时间内的缓存先使用，同时后台刷新
+    private static final long MAX_STALE_MS = 24 * 60 * 60 * 1000L;
+    // 只保存少量域名
+    private static final int MAX_HOSTS = 32;
+
+    private final Map<String, Answer> answers = new ConcurrentHashMap<>();
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+    private volatile SharedPreferences prefs;
+
+    // 直接使用缓存结果省下的解析耗时（按该域名上次实际解析耗时估算）
+    private final AtomicLong savedMs = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    /**
+     * 一条解析结果
+     */
+    private static final class Answer {
+        final long resolvedAt;
+        final long lookupMs;
+        final List<InetAddress> addresses;
+
+        Answer(long resolvedAt, long lookupMs, List<InetAddress> addresses) {
+            this.resolvedAt = resolvedAt;
+            this.lookupMs = lookupMs;
+            this.addresses = addresses;
+        }
+
+        /**
+         * 序列化格式：解析时间|解析耗时|IP1,IP2,...
+         */
+        String encode() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(resolvedAt).append('|').append(lookupMs).append('|');
+            for (int i = 0; i < addresses.size(); i++) {
+                if (i > 0) sb.append(',');
+                sb.append(addresses.get(i).getHostAddress());
+            }
+            return sb.toString();
+        }
+
+        static Answer decode(String host, String value) {
+            String[] parts = value.split("\\|", 3);
+            if (parts.length != 3 || parts[2].isEmpty()) return null;
+            try {
+                List<InetAddress> addresses = new ArrayList<>();
+                for (String ip : parts[2].split(",")) {
+                    // IP 字面量不会触发网络查询
+                    addresses.add(InetAddress.getByAddress(host, InetAddress.getByName(ip).getAddress()));
+                }
+                return new Answer(Long.parseLong(parts[0]), Long.parseLong(parts[1]), addresses);
+            } catch (NumberFormatException | UnknownHostException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * 载入上次保存的解析结果，可以在任意时机调用，之前的查询直接走系统解析
+     */
+    public void load(Context context) {
+        if (prefs != null) return;
+        SharedPreferences sp = context.getApplicationContext()
+                .getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (Map.Entry<String, ?> entry : sp.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(KEY_PREFIX) || !(entry.getValue() instanceof String)) continue;
+            String host = entry.getKey().substring(KEY_PREFIX.length());
+            Answer answer = Answer.decode(host, (String) entry.getValue());
+            if (answer != null) {
+                answers.putIfAbsent(host, answer);
+            }
+        }
+        prefs = sp;
+        Log.d(TAG, "已载入 DNS 缓存 " + answers.size() + " 项");
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        long now = System.currentTimeMillis();
+        Answer cached = answers.get(hostname);
+        if (cached != null && now - cached.resolvedAt < MAX_STALE_MS) {
+            if (now - cached.resolvedAt >= FRESH_MS) {
+                refreshAsync(hostname);
+            }
+            cacheHits.incrementAndGet();
+            savedMs.addAndGet(cached.lookupMs);
+            return cached.addresses;
+        }
+
+        try {
+            return resolve(hostname);
+        } catch (UnknownHostException e) {
+            if (cached != null) {
+                Log.w(TAG, "系统解析失败，使用旧的解析结果: " + hostname);
+                return cached.addresses;
+            }
+            throw e;
+        }
+    }
+
+    private List<InetAddress> resolve(String hostname) throws UnknownHostException {
+        long start = System.currentTimeMillis();
+        List<InetAddress> addresses = Dns.SYSTEM.lookup(hostname);
+        long lookupMs = System.currentTimeMillis() - start;
+        remember(hostname, new Answer(start, lookupMs, addresses));
+        return addresses;
+    }
+
+    private void refreshAsync(String hostname) {
+        if (!refreshing.add(hostname)) return;
+        refreshExecutor.execute(() -> {
+            try {
+                resolve(hostname);
+            } catch (UnknownHostException e) {
+                Log.w(TAG, "后台刷新解析失败: " + hostname);
+            } finally {
+                refreshing.remove(hostname);
+            }
+        });
+    }
+
+    private void remember(String hostname, Answer answer) {
+        if (!answers.containsKey(hostname) && answers.size() >= MAX_HOSTS) return;
+        answers.put(hostname, answer);
+        SharedPreferences sp = prefs;
+        if (sp != null) {
+            sp.edit().putString(KEY_PREFIX + hostname, answer.encode()).apply();
+        }
+    }
+
+    /**
+     * 丢弃某个域名的解析结果（例如缓存的地址已无法连接）
+     */
+    public void invalidate(String hostname) {
+        if (answers.remove(hostname) == null) return;
+        SharedPreferences sp = prefs;
+        if (sp != null) {
+            sp.edit().remove(KEY_PREFIX + hostname).apply();
+        }
+        Log.d(TAG, "已丢弃 DNS 缓存: " + hostname);
+    }
+
+    /**
+     * 清空内存和持久化的解析结果（例如网络切换后地址可能失效）
+     */
+    public void clear() {
+        answers.clear();
+        SharedPreferences sp = prefs;
+        if (sp != null) {
+            sp.edit().clear().apply();
+        }
+    }
+
+    public long getSavedMs() {
+        return savedMs.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+}
@@ -0,0 +1,174 @@
+package link.moely.mobile;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Preconnector
+ * 启动时预连接首屏依赖的源站：提前完成 DNS 解析和 TLS 握手，
+ * 建立的 HTTP/2 连接留在共享的 OkHttp 连接池中，随后的预加载请求直接复用。
+ * 同时作为 EventListener.Factory 统计每次连接的握手耗时，
+ * 预连接建立的连接被首次复用时，把当时的握手耗时计为节省的时间。
+ */
+public class Preconnector implements EventListener.Factory {
+    private static final String TAG = "Preconnector";
+
+    // 首屏依赖的源站
+    private static final String[] CRITICAL_ORIGINS = {
+            "https://www.moely.link/",
+            "https://cdnjs.cloudflare.com/",
+            "https://cdn.jsdelivr.net/",
+            "https://fonts.loli.net/",
+            "https://js.hcaptcha.com/"
+    };
+
+    /**
+     * 标记预连接请求（Request.tag）
+     */
+    private static final class PreconnectTag {
+    }
+
+    private static final PreconnectTag TAG_INSTANCE = new PreconnectTag();
+
+    private final PersistentDns dns;
+    private volatile OkHttpClient client;
+
+    // 预连接已付出、尚未被后续请求复用的握手耗时（按域名）
+    private final Map<String, Long> pendingHandshakeMs = new ConcurrentHashMap<>();
+
+    private final AtomicLong preconnectedCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+    private final AtomicLong savedHandshakeMs = new AtomicLong();
+
+    public Preconnector(PersistentDns dns) {
+        this.dns = dns;
+    }
+
+    /**
+     * 设置用于预连接的客户端（必须是预加载共用的同一个客户端，连接池才能共享）
+     */
+    public void attach(OkHttpClient client) {
+        this.client = client;
+    }
+
+    /**
+     * 并行预连接所有关键源站，不阻塞调用线程
+     */
+    public void preconnect() {
+        OkHttpClient httpClient = client;
+        if (httpClient == null) return;
+        for (String origin : CRITICAL_ORIGINS) {
+            Request request = new Request.Builder()
+                    .url(origin)
+                    .head()
+                    .tag(PreconnectTag.class, TAG_INSTANCE)
+                    .build();
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    Log.w(TAG, "预连接失败: " + origin + " - " + e.getMessage());
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    // 只需要连接本身，响应内容直接丢弃
+                    response.close();
+                }
+            });
+        }
+    }
+
+    @Override
+    public EventListener create(Call call) {
+        return new ConnectionTimer(call.request().tag(PreconnectTag.class) != null);
+    }
+
+    /**
+     * 单次请求的连接计时
+     */
+    private final class ConnectionTimer extends EventListener {
+        private final boolean preconnect;
+        private long dnsStart;
+        private long dnsMs;
+        private long connectStart;
+        private boolean connected;
+
+        ConnectionTimer(boolean preconnect) {
+            this.preconnect = preconnect;
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            dnsMs = (System.nanoTime() - dnsStart) / 1_000_000;
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+            connected = true;
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (!preconnect) return;
+            long handshakeMs = dnsMs + (System.nanoTime() - connectStart) / 1_000_000;
+            String host = call.request().url().host();
+            pendingHandshakeMs.put(host, handshakeMs);
+            preconnectedCount.incrementAndGet();
+            Log.d(TAG, "已预连接 " + host + " (" + protocol + ", " + handshakeMs + "ms)");
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  Protocol protocol, IOException ioe) {
+            // 持久化的地址可能已经失效，下次重新解析
+            dns.invalidate(call.request().url().host());
+        }
+
+        @Override
+        public void connectionAcquired(Call call, Connection connection) {
+            if (preconnect || connected) return;
+            // 没有新建连接：如果这是预连接建立的连接第一次被复用，计入节省的握手时间
+            Long handshakeMs = pendingHandshakeMs.remove(call.request().url().host());
+            if (handshakeMs != null) {
+                reusedCount.incrementAndGet();
+                savedHandshakeMs.addAndGet(handshakeMs);
+            }
+        }
+    }
+
+    /**
+     * 节省的握手时间：预连接被复用的部分 + DNS 缓存命中的部分
+     */
+    public long getSavedMs() {
+        return savedHandshakeMs.get() + dns.getSavedMs();
+    }
+
+    public String describeStats() {
+        return "预连接: " + preconnectedCount.get() + " 个连接，复用 " + reusedCount.get()
+                + " 次，节省握手 " + savedHandshakeMs.get() + "ms"
+                + "; DNS 缓存命中 " + dns.getCacheHits() + " 次，节省 " + dns.getSavedMs() + "ms";
+    }
+}
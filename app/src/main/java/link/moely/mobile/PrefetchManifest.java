@@ -0,0 +1,160 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.annotations.SerializedName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PrefetchManifest
+ * 服务端下发的预加载清单，列出需要预加载的资源 URL、内容哈希、大小和优先级。
+ * 网站更新资源时只需更新清单，无需重新发布 APK。
+ * 获取顺序：远程清单 -> 上次成功保存的清单 -> APK 内置清单（assets/prefetch-manifest.json）。
+ */
+public class PrefetchManifest {
+    private static final String TAG = "PrefetchManifest";
+
+    public static final String MANIFEST_URL = "https://mobile.moely.link/app/prefetch-manifest.json";
+    private static final String BUNDLED_ASSET = "prefetch-manifest.json";
+    private static final String SAVED_FILE = "prefetch-manifest.json";
+
+    @SerializedName("version")
+    private int version;
+    @SerializedName("entries")
+    private List<Entry> entries;
+
+    /**
+     * 清单中的一条资源
+     */
+    public static class Entry {
+        @SerializedName("url")
+        private String url;
+        @SerializedName("sha256")
+        private String sha256; // 可为空：为空时按 HTTP 缓存语义重新验证
+        @SerializedName("size")
+        private long size;
+        @SerializedName("priority")
+        private int priority; // 数值越小越先下载
+
+        public String getUrl() {
+            return url;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * 按优先级排序后的条目
+     */
+    public List<Entry> getEntries() {
+        if (entries == null) return Collections.emptyList();
+        List<Entry> sorted = new ArrayList<>(entries);
+        Collections.sort(sorted, (a, b) -> Integer.compare(a.priority, b.priority));
+        return sorted;
+    }
+
+    /**
+     * 解析清单 JSON，格式错误或没有有效条目时返回 null
+     */
+    public static PrefetchManifest parse(String json) {
+        try {
+            PrefetchManifest manifest = new Gson().fromJson(json, PrefetchManifest.class);
+            if (manifest == null || manifest.entries == null) return null;
+            List<Entry> valid = new ArrayList<>();
+            for (Entry entry : manifest.entries) {
+                if (entry != null && entry.url != null && entry.url.startsWith("https://")) {
+                    valid.add(entry);
+                }
+            }
+            if (valid.isEmpty()) return null;
+            manifest.entries = valid;
+            return manifest;
+        } catch (JsonParseException e) {
+            Log.w(TAG, "清单解析失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 加载本地清单：优先使用上次从服务器获取并保存的版本，否则使用 APK 内置版本
+     */
+    public static PrefetchManifest loadLocal(Context context) {
+        File saved = new File(context.getFilesDir(), SAVED_FILE);
+        if (saved.exists()) {
+            try (InputStream in = new FileInputStream(saved)) {
+                PrefetchManifest manifest = parse(readFully(in));
+                if (manifest != null) {
+                    Log.d(TAG, "使用已保存的清单 v" + manifest.version);
+                    return manifest;
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "读取已保存的清单失败", e);
+            }
+        }
+
+        try (InputStream in = context.getAssets().open(BUNDLED_ASSET)) {
+            PrefetchManifest manifest = parse(readFully(in));
+            if (manifest != null) {
+                Log.d(TAG, "使用 APK 内置清单 v" + manifest.version);
+            }
+            return manifest;
+        } catch (IOException e) {
+            Log.e(TAG, "读取内置清单失败", e);
+            return null;
+        }
+    }
+
+    /**
+     * 保存从服务器获取的清单，供离线时使用
+     */
+    public static void save(Context context, String json) {
+        File saved = new File(context.getFilesDir(), SAVED_FILE);
+        File tmp = new File(context.getFilesDir(), SAVED_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "保存清单失败", e);
+            return;
+        }
+        if (!tmp.renameTo(saved)) {
+            Log.w(TAG, "替换清单文件失败");
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+}
@@ -0,0 +1,307 @@
+package link.moely.mobile;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * PrefetchScheduler
+ * 预加载请求调度器：按优先级排队，限制全局和单个域名的并发数，
+ * 保证阻塞渲染的 CSS/字体先于统计、验证码等延后脚本占用带宽。
+ * 主页面开始加载时可以取消低优先级的请求，把带宽让给页面本身。
+ */
+public class PrefetchScheduler {
+    private static final String TAG = "PrefetchScheduler";
+
+    // 优先级：数值越小越先执行（与预加载清单中的 priority 一致）
+    public static final int PRIORITY_RENDER_BLOCKING = 0; // CSS、字体
+    public static final int PRIORITY_CRITICAL = 1;        // 首屏需要的 JS
+    public static final int PRIORITY_DEFERRED = 2;        // 统计、验证码等延后加载的资源
+
+    private static final int DEFAULT_MAX_CONCURRENT = 4;
+    private static final int DEFAULT_MAX_PER_HOST = 2;
+
+    // 这些域名上的资源不影响首屏，归为延后优先级
+    private static final String[] DEFERRED_HOSTS = {
+            "googletagmanager.com",
+            "google-analytics.com",
+            "hcaptcha.com",
+            "algolia.net",
+            "algolianet.com"
+    };
+
+    // 不带扩展名的样式表接口（Google Fonts 及其镜像的 /css、/css2），返回阻塞渲染的 CSS
+    private static final String[] STYLESHEET_HOSTS = {
+            "fonts.googleapis.com",
+            "fonts.googleapis.cn",
+            "fonts.loli.net",
+            "fonts.font.im"
+    };
+    private static final String STYLESHEET_PATH_PREFIX = "/css";
+
+    private final OkHttpClient client;
+    private final int maxConcurrent;
+    private final int maxPerHost;
+
+    // 以下状态均由 this 保护
+    private final TreeSet<Task> queued = new TreeSet<>();
+    private final Set<Task> running = new HashSet<>();
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final Map<String, Task> tasksByKey = new HashMap<>();
+    private long nextSequence;
+    private long cancelledCount;
+
+    /**
+     * 一个排队中或执行中的请求
+     */
+    private static final class Task implements Comparable<Task> {
+        final String key;
+        final String host;
+        final Call call;
+        final Callback callback;
+        final long sequence;
+        int priority;
+
+        Task(String key, String host, Call call, Callback callback, int priority, long sequence) {
+            this.key = key;
+            this.host = host;
+            this.call = call;
+            this.callback = callback;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            if (priority != other.priority) return Integer.compare(priority, other.priority);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public PrefetchScheduler(OkHttpClient client) {
+        this(client, DEFAULT_MAX_CONCURRENT, DEFAULT_MAX_PER_HOST);
+    }
+
+    public PrefetchScheduler(OkHttpClient client, int maxConcurrent, int maxPerHost) {
+        this.client = client;
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerHost = maxPerHost;
+    }
+
+    /**
+     * 根据 URL 推断优先级（清单没有给出优先级时使用）
+     */
+    public static int priorityFor(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        for (String host : DEFERRED_HOSTS) {
+            if (lower.contains(host)) return PRIORITY_DEFERRED;
+        }
+        if (isStylesheetEndpoint(lower)) {
+            return PRIORITY_RENDER_BLOCKING;
+        }
+        String mimeType = ResourceHeaders.guessMimeType(url);
+        if (mimeType.equals("text/css") || mimeType.startsWith("font/")) {
+            return PRIORITY_RENDER_BLOCKING;
+        }
+        if (mimeType.contains("javascript")) {
+            return PRIORITY_CRITICAL;
+        }
+        return PRIORITY_DEFERRED;
+    }
+
+    /**
+     * 按域名和路径识别没有 .css 后缀的样式表接口（例如 https://fonts.loli.net/css?family=...）
+     * @param url 已转为小写的 URL
+     */
+    static boolean isStylesheetEndpoint(String url) {
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) return false;
+        int hostStart = schemeEnd + 3;
+        int pathStart = hostStart;
+        while (pathStart < url.length() && "/?#".indexOf(url.charAt(pathStart)) < 0) {
+            pathStart++;
+        }
+        String host = url.substring(hostStart, pathStart);
+        int port = host.indexOf(':');
+        if (port >= 0) {
+            host = host.substring(0, port);
+        }
+        boolean known = false;
+        for (String stylesheetHost : STYLESHEET_HOSTS) {
+            if (host.equals(stylesheetHost)) {
+                known = true;
+                break;
+            }
+        }
+        return known && url.startsWith(STYLESHEET_PATH_PREFIX, pathStart);
+    }
+
+    /**
+     * 提交请求
+     * 回调在 OkHttp 线程执行；请求被取消时回调 onFailure。
+     * onResponse 返回后才释放并发名额，因此回调内应读完响应体。
+     * @param key 去重和提升优先级用的键（通常为 URL），同一键同时只能有一个请求
+     * @return 同一键已有请求时返回 false，回调不会被调用
+     */
+    public boolean submit(String key, Request request, int priority, Callback callback) {
+        List<Task> toStart;
+        synchronized (this) {
+            if (tasksByKey.containsKey(key)) {
+                Log.w(TAG, "重复提交，已忽略: " + key);
+                return false;
+            }
+            Task task = new Task(key, request.url().host(), client.newCall(request), callback,
+                    priority, nextSequence++);
+            tasksByKey.put(key, task);
+            queued.add(task);
+            toStart = promoteReady();
+        }
+        start(toStart);
+        return true;
+    }
+
+    /**
+     * 提升请求到最高优先级（例如 WebView 正在等待它），排队中的立即调度
+     */
+    public void promote(String key) {
+        List<Task> toStart;
+        synchronized (this) {
+            Task task = tasksByKey.get(key);
+            if (task == null) return;
+            // 执行中的请求也提升，避免随后被 cancelBelow 取消
+            boolean wasQueued = queued.remove(task);
+            task.priority = PRIORITY_RENDER_BLOCKING - 1;
+            if (!wasQueued) return;
+            queued.add(task);
+            toStart = promoteReady();
+        }
+        start(toStart);
+    }
+
+    /**
+     * 取消优先级低于（数值大于）threshold 的所有请求，包括排队中和执行中的
+     * @return 取消的请求数
+     */
+    public int cancelBelow(int threshold) {
+        List<Task> cancelledQueued = new ArrayList<>();
+        List<Task> cancelledRunning = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Task> it = queued.iterator();
+            while (it.hasNext()) {
+                Task task = it.next();
+                if (task.priority > threshold) {
+                    it.remove();
+                    tasksByKey.remove(task.key);
+                    cancelledQueued.add(task);
+                }
+            }
+            for (Task task : running) {
+                if (task.priority > threshold) {
+                    cancelledRunning.add(task);
+                }
+            }
+            cancelledCount += cancelledQueued.size() + cancelledRunning.size();
+        }
+
+        // 排队中的请求从未发出，直接通知调用方；执行中的请求由 OkHttp 回调 onFailure
+        for (Task task : cancelledQueued) {
+            task.call.cancel();
+            task.callback.onFailure(task.call, new IOException("Canceled"));
+        }
+        for (Task task : cancelledRunning) {
+            task.call.cancel();
+        }
+        int total = cancelledQueued.size() + cancelledRunning.size();
+        if (total > 0) {
+            Log.d(TAG, "已取消低优先级预加载 " + total + " 项 (排队 " + cancelledQueued.size()
+                    + ", 执行中 " + cancelledRunning.size() + ")");
+        }
+        return total;
+    }
+
+    public synchronized int getQueuedCount() {
+        return queued.size();
+    }
+
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    public synchronized long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * 按优先级取出满足并发限制的请求，调用方需持有锁
+     * 某个域名达到上限时跳过它的请求，不影响其他域名
+     */
+    private List<Task> promoteReady() {
+        List<Task> ready = new ArrayList<>();
+        Iterator<Task> it = queued.iterator();
+        while (it.hasNext() && running.size() < maxConcurrent) {
+            Task task = it.next();
+            int hostCount = runningPerHost.getOrDefault(task.host, 0);
+            if (hostCount >= maxPerHost) continue;
+            it.remove();
+            running.add(task);
+            runningPerHost.put(task.host, hostCount + 1);
+            ready.add(task);
+        }
+        return ready;
+    }
+
+    private void start(List<Task> tasks) {
+        for (Task task : tasks) {
+            task.call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    try {
+                        task.callback.onFailure(call, e);
+                    } finally {
+                        finished(task);
+                    }
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    try {
+                        task.callback.onResponse(call, response);
+                    } finally {
+                        finished(task);
+                    }
+                }
+            });
+        }
+    }
+
+    private void finished(Task task) {
+        List<Task> toStart;
+        synchronized (this) {
+            if (!running.remove(task)) return;
+            tasksByKey.remove(task.key);
+            int hostCount = runningPerHost.getOrDefault(task.host, 1) - 1;
+            if (hostCount <= 0) {
+                runningPerHost.remove(task.host);
+            } else {
+                runningPerHost.put(task.host, hostCount);
+            }
+            toStart = promoteReady();
+        }
+        start(toStart);
+    }
+}
@@ -0,0 +1,331 @@
+package link.moely.mobile;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceResponse;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * RequestMetrics
+ * WebView 请求路径（shouldInterceptRequest）的命中率和耗时统计。
+ * 按资源类型和源站分别记录命中 / 未命中次数、拦截耗时直方图（LatencyHistogram），
+ * 以及从缓存返回和由原生层从网络获取的字节数（按 WebView 实际读取的字节计）。
+ * 交给 WebView 自己加载的请求只计未命中次数和拦截耗时，其字节数原生层无法得知。
+ * Service Worker 发出的请求（ServiceWorkerClientCompat）同样计入以上统计，并单独汇总一份。
+ * 计数全部为无锁的 LongAdder / 原子数组，不影响请求路径。统计只在内存中，进程结束即清空。
+ */
+public class RequestMetrics {
+    private static final String TAG = "RequestMetrics";
+
+    // 单独统计的源站数量上限，超出的合并为 OTHER_ORIGIN
+    private static final int MAX_ORIGINS = 64;
+    private static final String OTHER_ORIGIN = "(其他)";
+
+    /**
+     * 请求最终由哪一层处理
+     */
+    public enum Source {
+        DOCUMENT_PREFETCH("预加载文档", true),
+        MAIN_FRAME_CACHE("主页面缓存", true),
+        RANGE("分段缓存", true),
+        TRANSCODED_IMAGE("图片转码", true),
+        CACHE("资源缓存", true),
+        MIRROR("CDN 镜像", false),
+        WEBVIEW("WebView 加载", false);
+
+        final String label;
+        // 是否算作命中（从缓存返回）
+        final boolean hit;
+
+        Source(String label, boolean hit) {
+            this.label = label;
+            this.hit = hit;
+        }
+    }
+
+    /**
+     * 一组计数：全部请求、某一资源类型或某一源站
+     */
+    static class Stats {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder cacheBytes = new LongAdder();
+        final LongAdder networkBytes = new LongAdder();
+        final LatencyHistogram hitLatency = new LatencyHistogram();
+        final LatencyHistogram missLatency = new LatencyHistogram();
+
+        void reset() {
+            hits.reset();
+            misses.reset();
+            cacheBytes.reset();
+            networkBytes.reset();
+            hitLatency.reset();
+            missLatency.reset();
+        }
+
+        void describe(StringBuilder out) {
+            long hit = hits.sum();
+            long miss = misses.sum();
+            long total = hit + miss;
+            out.append("  命中 ").append(hit).append(" / ").append(total);
+            if (total > 0) {
+                out.append(String.format(Locale.ROOT, " (%.1f%%)", hit * 100.0 / total));
+            }
+            out.append("，缓存 ").append(cacheBytes.sum()).append(" bytes，网络 ")
+                    .append(networkBytes.sum()).append(" bytes\n");
+            out.append("  命中耗时 ").append(hitLatency.summary()).append('\n');
+            out.append("  未命中耗时 ").append(missLatency.summary()).append('\n');
+        }
+    }
+
+    private static volatile RequestMetrics instance;
+
+    private final Stats total = new Stats();
+    // Service Worker 发出的请求
+    private final Stats serviceWorker = new Stats();
+    private final Map<String, Stats> byType = new ConcurrentHashMap<>();
+    private final Map<String, Stats> byOrigin = new ConcurrentHashMap<>();
+    private final LongAdder[] bySource = new LongAdder[Source.values().length];
+    private volatile long startedAt = System.currentTimeMillis();
+
+    private RequestMetrics() {
+        for (int i = 0; i < bySource.length; i++) {
+            bySource[i] = new LongAdder();
+        }
+    }
+
+    public static RequestMetrics getInstance() {
+        if (instance == null) {
+            synchronized (RequestMetrics.class) {
+                if (instance == null) {
+                    instance = new RequestMetrics();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 记录一次拦截的结果和耗时
+     * @param mainFrame 是否为主页面请求（主页面 URL 通常没有后缀，无法按后缀判断类型）
+     * @param startNanos 进入 shouldInterceptRequest 时的 System.nanoTime()
+     * @param response 返回给 WebView 的响应，交给 WebView 加载时为 null
+     * @return 同一个响应；其数据流被包装为按读取字节计数的流
+     */
+    public WebResourceResponse record(String url, boolean mainFrame, Source source, long startNanos, WebResourceResponse response) {
+        return record(url, mainFrame, source, startNanos, response, null);
+    }
+
+    /**
+     * 记录一次 Service Worker 请求的拦截结果和耗时
+     */
+    public WebResourceResponse recordServiceWorker(String url, Source source, long startNanos,
+                                                   WebResourceResponse response) {
+        return record(url, false, source, startNanos, response, serviceWorker);
+    }
+
+    private WebResourceResponse record(String url, boolean mainFrame, Source source, long startNanos,
+                                       WebResourceResponse response, Stats extra) {
+        long elapsed = System.nanoTime() - startNanos;
+        if (response == null) {
+            source = Source.WEBVIEW;
+        }
+        bySource[source.ordinal()].increment();
+
+        Stats typeStats = stats(byType, mainFrame ? "document" : resourceType(url));
+        Stats originStats = originStats(url);
+        Stats[] targets = extra != null
+                ? new Stats[] {total, typeStats, originStats, extra}
+                : new Stats[] {total, typeStats, originStats};
+        for (Stats stats : targets) {
+            if (source.hit) {
+                stats.hits.increment();
+                stats.hitLatency.recordNanos(elapsed);
+            } else {
+                stats.misses.increment();
+                stats.missLatency.recordNanos(elapsed);
+            }
+        }
+
+        if (response != null && response.getData() != null) {
+            response.setData(new CountingInputStream(response.getData(), source.hit, targets));
+        }
+        return response;
+    }
+
+    public void reset() {
+        total.reset();
+        serviceWorker.reset();
+        byType.clear();
+        byOrigin.clear();
+        for (LongAdder counter : bySource) {
+            counter.reset();
+        }
+        startedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 文本形式的统计报告，用于调试页面和导出
+     */
+    public String describe() {
+        StringBuilder out = new StringBuilder();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+        out.append("统计开始于 ").append(format.format(new Date(startedAt))).append('\n');
+        out.append("\n== 全部请求 ==\n");
+        total.describe(out);
+        out.append("\n== Service Worker 请求 ==\n");
+        serviceWorker.describe(out);
+
+        out.append("\n== 处理来源 ==\n");
+        for (Source source : Source.values()) {
+            out.append("  ").append(source.label).append(": ").append(bySource[source.ordinal()].sum()).append('\n');
+        }
+
+        out.append("\n== 按资源类型 ==\n");
+        describeGroup(byType, out);
+        out.append("\n== 按源站 ==\n");
+        describeGroup(byOrigin, out);
+        return out.toString();
+    }
+
+    /**
+     * 将统计报告（及附加内容）写入应用外部文件目录
+     * @return 写入的文件
+     */
+    public File dumpToFile(Context context, String extra) throws IOException {
+        File dir = context.getExternalFilesDir(null);
+        if (dir == null) {
+            dir = context.getFilesDir();
+        }
+        String name = "request-metrics-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date()) + ".txt";
+        File file = new File(dir, name);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(describe());
+            if (extra != null) {
+                writer.write('\n');
+                writer.write(extra);
+            }
+        }
+        Log.d(TAG, "请求统计已导出: " + file.getAbsolutePath());
+        return file;
+    }
+
+    /**
+     * 按 MIME 类型归类：document / script / style / image / font / media / other
+     */
+    static String resourceType(String url) {
+        String mimeType = ResourceHeaders.guessMimeType(url);
+        if (mimeType.equals("text/html")) return "document";
+        if (mimeType.contains("javascript")) return "script";
+        if (mimeType.equals("text/css")) return "style";
+        if (mimeType.startsWith("image/")) return "image";
+        if (mimeType.startsWith("font/") || mimeType.contains("font")) return "font";
+        if (mimeType.startsWith("video/") || mimeType.startsWith("audio/")) return "media";
+        return "other";
+    }
+
+    private Stats originStats(String url) {
+        String host = null;
+        try {
+            host = Uri.parse(url).getHost();
+        } catch (RuntimeException ignored) {
+        }
+        if (host == null) {
+            host = OTHER_ORIGIN;
+        }
+        Stats stats = byOrigin.get(host);
+        if (stats != null) return stats;
+        if (byOrigin.size() >= MAX_ORIGINS) {
+            host = OTHER_ORIGIN;
+        }
+        return stats(byOrigin, host);
+    }
+
+    private static Stats stats(Map<String, Stats> group, String key) {
+        Stats stats = group.get(key);
+        if (stats == null) {
+            stats = group.computeIfAbsent(key, k -> new Stats());
+        }
+        return stats;
+    }
+
+    /**
+     * 按请求数从多到少输出
+     */
+    private static void describeGroup(Map<String, Stats> group, StringBuilder out) {
+        List<Map.Entry<String, Stats>> entries = new ArrayList<>(group.entrySet());
+        Collections.sort(entries, (a, b) -> Long.compare(
+                b.getValue().hits.sum() + b.getValue().misses.sum(),
+                a.getValue().hits.sum() + a.getValue().misses.sum()));
+        for (Map.Entry<String, Stats> entry : entries) {
+            out.append(entry.getKey()).append('\n');
+            entry.getValue().describe(out);
+        }
+    }
+
+    /**
+     * WebView 读取响应数据时累计字节数
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final boolean fromCache;
+        private final Stats[] targets;
+
+        CountingInputStream(InputStream in, boolean fromCache, Stats... targets) {
+            super(in);
+            this.fromCache = fromCache;
+            this.targets = targets;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                count(skipped);
+            }
+            return skipped;
+        }
+
+        private void count(long n) {
+            for (Stats stats : targets) {
+                (fromCache ? stats.cacheBytes : stats.networkBytes).add(n);
+            }
+        }
+    }
+}
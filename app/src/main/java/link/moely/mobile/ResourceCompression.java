@@ -0,0 +1,214 @@
+package link.moely.mobile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * ResourceCompression
+ * 预加载缓存的压缩存储：CSS/JS/SVG/JSON 等文本资源以 deflate（zlib 格式，与 gzip 同一算法）
+ * 压缩后保存，命中时通过流式解压直接交给 WebView。
+ * Inflater 和读缓冲区都放在对象池中复用，避免每次命中都分配本地内存和大数组。
+ */
+public final class ResourceCompression {
+
+    public static final String ENCODING_DEFLATE = "deflate";
+
+    // 压缩后至少节省 10% 才值得保存为压缩格式
+    private static final double MIN_SAVING_RATIO = 0.9;
+    // 太小的资源压缩收益不明显
+    private static final int MIN_COMPRESS_SIZE = 1024;
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int POOL_SIZE = 4;
+
+    private static final ArrayBlockingQueue<Inflater> INFLATER_POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final ArrayBlockingQueue<byte[]> BUFFER_POOL = new ArrayBlockingQueue<>(POOL_SIZE * 2);
+
+    // 统计：用于衡量节省的内存与消耗的 CPU
+    private static final AtomicLong rawBytes = new AtomicLong();
+    private static final AtomicLong compressedBytes = new AtomicLong();
+    private static final AtomicLong compressNanos = new AtomicLong();
+    private static final AtomicLong inflateNanos = new AtomicLong();
+
+    private ResourceCompression() {
+    }
+
+    /**
+     * 该 MIME 类型是否值得压缩存储（图片、字体等已压缩格式不处理）
+     */
+    public static boolean isCompressible(String mimeType) {
+        if (mimeType == null) return false;
+        return mimeType.startsWith("text/")
+                || mimeType.equals("application/javascript")
+                || mimeType.equals("application/x-javascript")
+                || mimeType.equals("application/json")
+                || mimeType.equals("application/xml")
+                || mimeType.equals("image/svg+xml");
+    }
+
+    /**
+     * 压缩数据
+     * @return 压缩后的数据；体积太小或压缩收益不足时返回 null
+     */
+    public static byte[] compress(byte[] raw) {
+        if (raw.length < MIN_COMPRESS_SIZE) return null;
+
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] buffer = acquireBuffer();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 3);
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            byte[] compressed = out.toByteArray();
+            compressNanos.addAndGet(System.nanoTime() - start);
+            if (compressed.length > raw.length * MIN_SAVING_RATIO) {
+                return null;
+            }
+            rawBytes.addAndGet(raw.length);
+            compressedBytes.addAndGet(compressed.length);
+            return compressed;
+        } finally {
+            deflater.end();
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * 包装为边读边解压的输入流，读到结尾或关闭时归还 Inflater 和缓冲区
+     */
+    public static InputStream inflatingStream(InputStream compressed) {
+        return new PooledInflaterInputStream(compressed);
+    }
+
+    private static byte[] acquireBuffer() {
+        byte[] buffer = BUFFER_POOL.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        BUFFER_POOL.offer(buffer);
+    }
+
+    private static Inflater acquireInflater() {
+        Inflater inflater = INFLATER_POOL.poll();
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        if (!INFLATER_POOL.offer(inflater)) {
+            inflater.end();
+        }
+    }
+
+    public static long getRawBytes() {
+        return rawBytes.get();
+    }
+
+    public static long getCompressedBytes() {
+        return compressedBytes.get();
+    }
+
+    public static long getCompressNanos() {
+        return compressNanos.get();
+    }
+
+    public static long getInflateNanos() {
+        return inflateNanos.get();
+    }
+
+    /**
+     * 统计摘要：节省的字节数与压缩/解压耗时
+     */
+    public static String describeStats() {
+        long raw = rawBytes.get();
+        long compressed = compressedBytes.get();
+        return "压缩存储: " + raw + " -> " + compressed + " bytes (节省 " + (raw - compressed) + ")"
+                + ", 压缩耗时 " + compressNanos.get() / 1_000_000 + "ms"
+                + ", 解压耗时 " + inflateNanos.get() / 1_000_000 + "ms";
+    }
+
+    private static final class PooledInflaterInputStream extends InputStream {
+        private final InputStream source;
+        private Inflater inflater;
+        private byte[] input;
+        private boolean sourceExhausted;
+
+        PooledInflaterInputStream(InputStream source) {
+            this.source = source;
+            this.inflater = acquireInflater();
+            this.input = acquireBuffer();
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (inflater == null) return -1;
+            if (len == 0) return 0;
+
+            long start = System.nanoTime();
+            try {
+                while (true) {
+                    int n = inflater.inflate(b, off, len);
+                    if (n > 0) return n;
+                    if (inflater.finished()) {
+                        release();
+                        return -1;
+                    }
+                    if (inflater.needsDictionary()) {
+                        throw new IOException("不支持带字典的压缩数据");
+                    }
+                    if (inflater.needsInput()) {
+                        if (sourceExhausted) {
+                            throw new IOException("压缩数据不完整");
+                        }
+                        int read = source.read(input, 0, input.length);
+                        if (read == -1) {
+                            sourceExhausted = true;
+                        } else {
+                            inflater.setInput(input, 0, read);
+                        }
+                    }
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("压缩数据损坏", e);
+            } finally {
+                inflateNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            release();
+            source.close();
+        }
+
+        private void release() {
+            if (inflater != null) {
+                releaseInflater(inflater);
+                inflater = null;
+            }
+            if (input != null) {
+                releaseBuffer(input);
+                input = null;
+            }
+        }
+    }
+}
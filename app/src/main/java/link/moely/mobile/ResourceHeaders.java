@@ -0,0 +1,214 @@
+package link.moely.mobile;
+
+import android.webkit.MimeTypeMap;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import okhttp3.MediaType;
+import okhttp3.Response;
+
+/**
+ * ResourceHeaders
+ * 缓存条目的响应元信息：MIME 类型、字符集以及需要原样回传给 WebView 的源站响应头
+ * （CORS、缓存、校验器等）。在下载时计算一次，之后只读；命中时直接用于构建
+ * WebResourceResponse，不再做任何字符串解析。
+ */
+public final class ResourceHeaders {
+
+    // 需要保留并回传给 WebView 的源站响应头
+    private static final String[] PRESERVED_HEADERS = {
+            "Access-Control-Allow-Origin",
+            "Access-Control-Allow-Credentials",
+            "Access-Control-Expose-Headers",
+            "Timing-Allow-Origin",
+            "Cross-Origin-Resource-Policy",
+            "Cache-Control",
+            "Expires",
+            "ETag",
+            "Last-Modified",
+            "Content-Language"
+    };
+
+    // 主页面文档需要保留的响应头：缓存校验器和页面的安全策略，不含 CORS 头
+    private static final String[] DOCUMENT_HEADERS = {
+            "Cache-Control",
+            "Expires",
+            "ETag",
+            "Last-Modified",
+            "Content-Language",
+            "Content-Security-Policy",
+            "Content-Security-Policy-Report-Only",
+            "X-Frame-Options",
+            "X-Content-Type-Options",
+            "Referrer-Policy",
+            "Permissions-Policy",
+            "Cross-Origin-Opener-Policy",
+            "Cross-Origin-Embedder-Policy"
+    };
+
+    private static final String META_MIME_TYPE = "mime";
+    private static final String META_CHARSET = "charset";
+    private static final String META_HEADER_PREFIX = "h:";
+    private static final String META_DOCUMENT = "document";
+
+    public final String mimeType;
+    public final String charset;
+    // 不可修改，多次命中共享同一个实例
+    public final Map<String, String> responseHeaders;
+    // 主页面文档：保留 DOCUMENT_HEADERS，不补 CORS 头
+    public final boolean document;
+
+    private ResourceHeaders(String mimeType, String charset, Map<String, String> responseHeaders, boolean document) {
+        this.mimeType = mimeType;
+        this.charset = charset;
+        this.responseHeaders = Collections.unmodifiableMap(responseHeaders);
+        this.document = document;
+    }
+
+    /**
+     * 从源站响应提取；没有 Content-Type 时才根据 URL 推断 MIME 类型
+     */
+    public static ResourceHeaders fromResponse(String url, Response response) {
+        return fromResponse(url, response, false);
+    }
+
+    /**
+     * 从主页面文档的响应提取：命中时原样回传页面的安全策略（CSP、X-Frame-Options 等），
+     * 否则缓存的页面比网络加载的页面限制更少
+     */
+    public static ResourceHeaders fromDocumentResponse(String url, Response response) {
+        return fromResponse(url, response, true);
+    }
+
+    private static ResourceHeaders fromResponse(String url, Response response, boolean document) {
+        String mimeType = null;
+        String charset = null;
+        MediaType contentType = response.body() != null ? response.body().contentType() : null;
+        if (contentType == null) {
+            String header = response.header("Content-Type");
+            contentType = header != null ? MediaType.parse(header) : null;
+        }
+        if (contentType != null) {
+            mimeType = contentType.type() + "/" + contentType.subtype();
+            if (contentType.charset() != null) {
+                charset = contentType.charset().name();
+            }
+        }
+        if (mimeType == null || mimeType.equals("application/octet-stream")) {
+            mimeType = guessMimeType(url);
+        }
+        if (charset == null && ResourceCompression.isCompressible(mimeType)) {
+            charset = "UTF-8"; // 文本资源默认 UTF-8
+        }
+
+        Map<String, String> headers = new HashMap<>();
+        for (String name : document ? DOCUMENT_HEADERS : PRESERVED_HEADERS) {
+            String value = response.header(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        // 源站未声明 CORS 时补上，缺少它会导致字体文件 (.woff2) 跨域报错；文档不需要
+        if (!document && !headers.containsKey("Access-Control-Allow-Origin")) {
+            headers.put("Access-Control-Allow-Origin", "*");
+        }
+        return new ResourceHeaders(mimeType, charset, headers, document);
+    }
+
+    /**
+     * 合并 304 响应中更新的响应头（例如新的 Cache-Control、ETag）
+     */
+    public ResourceHeaders mergeNotModified(Response notModified) {
+        Map<String, String> headers = new HashMap<>(responseHeaders);
+        for (String name : document ? DOCUMENT_HEADERS : PRESERVED_HEADERS) {
+            String value = notModified.header(name);
+            if (value != null) {
+                headers.put(name, value);
+            }
+        }
+        return new ResourceHeaders(mimeType, charset, headers, document);
+    }
+
+    public String get(String name) {
+        return responseHeaders.get(name);
+    }
+
+    /**
+     * 写入磁盘索引元数据
+     */
+    public void writeMetadata(Map<String, String> meta) {
+        meta.put(META_MIME_TYPE, mimeType);
+        if (charset != null) meta.put(META_CHARSET, charset);
+        if (document) meta.put(META_DOCUMENT, "1");
+        for (Map.Entry<String, String> header : responseHeaders.entrySet()) {
+            meta.put(META_HEADER_PREFIX + header.getKey(), header.getValue());
+        }
+    }
+
+    /**
+     * 从磁盘索引元数据恢复
+     * 旧版本写入的条目没有 MIME 信息，此时按 URL 推断
+     */
+    public static ResourceHeaders fromMetadata(String url, Map<String, String> meta) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, String> entry : meta.entrySet()) {
+            if (entry.getKey().startsWith(META_HEADER_PREFIX)) {
+                headers.put(entry.getKey().substring(META_HEADER_PREFIX.length()), entry.getValue());
+            }
+        }
+        boolean document = "1".equals(meta.get(META_DOCUMENT));
+        if (!document && !headers.containsKey("Access-Control-Allow-Origin")) {
+            headers.put("Access-Control-Allow-Origin", "*");
+        }
+        String mimeType = meta.get(META_MIME_TYPE);
+        String charset = meta.get(META_CHARSET);
+        if (mimeType == null) {
+            mimeType = guessMimeType(url);
+            charset = ResourceCompression.isCompressible(mimeType) ? "UTF-8" : null;
+        }
+        return new ResourceHeaders(mimeType, charset, headers, document);
+    }
+
+    /**
+     * 【关键改进】更健壮的 MIME Type 获取逻辑
+     * 能够处理类似 style.css?v=1.0 这样的带参数 URL
+     * 仅在源站没有返回 Content-Type 时作为兜底使用
+     */
+    public static String guessMimeType(String url) {
+        String cleanUrl = url;
+
+        // 去除 URL 参数（例如 ?v=123）以便正确判断后缀
+        int query = url.indexOf('?');
+        if (query >= 0) {
+            cleanUrl = url.substring(0, query);
+        }
+        cleanUrl = cleanUrl.toLowerCase(Locale.ROOT);
+
+        // 1. 尝试使用系统 MimeTypeMap
+        String extension = MimeTypeMap.getFileExtensionFromUrl(cleanUrl);
+        String mimeType = null;
+        if (extension != null) {
+            mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+        }
+
+        // 2. 如果系统识别失败，使用手动后备列表
+        if (mimeType == null) {
+            if (cleanUrl.endsWith(".css")) return "text/css";
+            if (cleanUrl.endsWith(".js")) return "application/javascript";
+            if (cleanUrl.endsWith(".json")) return "application/json";
+            if (cleanUrl.endsWith(".jpg") || cleanUrl.endsWith(".jpeg")) return "image/jpeg";
+            if (cleanUrl.endsWith(".png")) return "image/png";
+            if (cleanUrl.endsWith(".gif")) return "image/gif";
+            if (cleanUrl.endsWith(".svg")) return "image/svg+xml";
+            if (cleanUrl.endsWith(".woff")) return "font/woff";
+            if (cleanUrl.endsWith(".woff2")) return "font/woff2"; // 常见字体
+            if (cleanUrl.endsWith(".ttf")) return "font/ttf";
+            return "text/plain"; // 默认兜底
+        }
+
+        return mimeType;
+    }
+}
@@ -24,6 +24,7 @@ import android.widget.Button;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.ScrollView;
+import android.widget.Switch;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -53,10 +54,12 @@ public class SettingsActivity extends BaseActivity {
     private RadioButton radioLight;
     private RadioButton radioDark;
     private RadioButton radioSystem;
+    private Switch imageTranscodingSwitch;
 
     private SharedPreferences prefs;
     private static final String PREFS_NAME = "MoelyAppPrefs";
     private static final String PREF_DOWNLOAD_DIRECTORY = "download_directory";
+    private static final String PREF_IMAGE_TRANSCODING = "image_transcoding_enabled";
     private static final String TAG = "MoelyMobileSettings";
 
     // Default download subdirectory name
@@ -164,6 +167,17 @@ public class SettingsActivity extends BaseActivity {
             updateDownloadDirectoryDisplay(savedUriString);
         }
 
+        // --- 图片压缩优化 ---
+        imageTranscodingSwitch = findViewById(R.id.switch_image_transcoding);
+        imageTranscodingSwitch.setChecked(prefs.getBoolean(PREF_IMAGE_TRANSCODING, false));
+        imageTranscodingSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            prefs.edit().putBoolean(PREF_IMAGE_TRANSCODING, isChecked).apply();
+            WebResourcePrefetcher.getInstance().setImageTranscoding(isChecked,
+                    getResources().getDisplayMetrics().widthPixels);
+        });
+        // 点击整个条目切换开关
+        findViewById(R.id.layout_image_transcoding).setOnClickListener(v -> imageTranscodingSwitch.toggle());
+
         // --- 主题色选择 ---
         themeColorButton.setOnClickListener(v -> {
             showColorPickerDialog();
@@ -209,6 +223,14 @@ public class SettingsActivity extends BaseActivity {
                 startActivity(new Intent(this, TranslationSettingsActivity.class));
             });
         }
+
+        // --- 请求统计（调试） ---
+        TextView requestMetricsButton = findViewById(R.id.requestMetricsButton);
+        if (requestMetricsButton != null) {
+            requestMetricsButton.setOnClickListener(v -> {
+                startActivity(new Intent(this, MetricsActivity.class));
+            });
+        }
     }
 
     @Override
@@ -232,6 +254,7 @@ public class SettingsActivity extends BaseActivity {
 
         long internalCacheClearedSize = getDirSize(getCacheDir());
         deleteDir(getCacheDir()); // 清除应用的内部缓存目录
+        WebResourcePrefetcher.getInstance().clearDiskCache(); // 重置预加载磁盘缓存（关闭已删除文件的句柄）
         Log.d(TAG, "Cleared internal cache: " + Formatter.formatFileSize(this, internalCacheClearedSize));
 
         if (getExternalCacheDir() != null) {
@@ -0,0 +1,124 @@
+package link.moely.mobile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * StreamingBuffer
+ * 边下载边读取的缓冲区：下载线程不断追加数据，任意数量的读取方通过 newInputStream()
+ * 从头读取，读到当前末尾时阻塞等待新数据，直到下载完成或失败。
+ * WebView 因此可以在首个数据块到达时就开始解析，而完整内容仍会写入缓存。
+ */
+public class StreamingBuffer {
+
+    // 读取方等待新数据的最长时间，超时视为下载停滞
+    private static final long STALL_TIMEOUT_MS = 15000;
+
+    private byte[] buffer;
+    private int count;
+    private boolean finished;
+    private IOException failure;
+
+    /**
+     * @param expectedLength 预期长度（Content-Length），未知时传 -1
+     */
+    public StreamingBuffer(long expectedLength) {
+        int initial = expectedLength > 0 && expectedLength < Integer.MAX_VALUE
+                ? (int) expectedLength : 16 * 1024;
+        this.buffer = new byte[initial];
+    }
+
+    /**
+     * 追加一段数据并唤醒等待中的读取方
+     */
+    public synchronized void write(byte[] data, int offset, int length) {
+        if (finished) {
+            throw new IllegalStateException("StreamingBuffer 已结束");
+        }
+        if (count + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + length));
+        }
+        System.arraycopy(data, offset, buffer, count, length);
+        count += length;
+        notifyAll();
+    }
+
+    /**
+     * 下载完成
+     */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * 下载失败，读取方会收到该异常
+     */
+    public synchronized void fail(IOException e) {
+        failure = e;
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * 下载完成后的完整内容
+     */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    /**
+     * 新建一个从头开始读取的输入流
+     */
+    public InputStream newInputStream() {
+        return new Reader();
+    }
+
+    private final class Reader extends InputStream {
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            synchronized (StreamingBuffer.this) {
+                long deadline = System.currentTimeMillis() + STALL_TIMEOUT_MS;
+                while (position >= count && !finished) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        throw new IOException("下载停滞超过 " + STALL_TIMEOUT_MS + "ms");
+                    }
+                    try {
+                        StreamingBuffer.this.wait(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("读取被中断", e);
+                    }
+                }
+                if (position >= count) {
+                    // 已结束且读完全部数据
+                    if (failure != null) throw new IOException("下载失败", failure);
+                    return -1;
+                }
+                int n = Math.min(len, count - position);
+                System.arraycopy(buffer, position, b, off, n);
+                position += n;
+                return n;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (StreamingBuffer.this) {
+                return count - position;
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package link.moely.mobile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * UrlCanonicalizer
+ * 缓存键的规范化：同一资源的不同写法映射到同一个键，避免无谓的缓存未命中。
+ * - scheme、host 转为小写，去掉默认端口和片段（#...）
+ * - 去掉可忽略的查询参数：所有源站的跟踪参数（utm_*、fbclid 等）、按源站配置的参数，
+ *   以及公共 CDN 上路径已固定版本号（@1.2.3 或 /1.2.3/）时的 ?v= 等缓存破坏参数
+ * - 其余参数按名称排序（同名参数保持原顺序）
+ * 结果记在索引中，同一 URL 只解析一次；之后每次查找只需一次哈希表查询。
+ * 非 http(s) URL（data:、blob: 等）原样返回。
+ */
+public class UrlCanonicalizer {
+
+    // 索引条目上限，超出时整体清空（页面资源 URL 数量有限，很少触发）
+    private static final int MAX_INDEX_SIZE = 4096;
+    // 超长 URL 不进入索引
+    private static final int MAX_INDEXED_LENGTH = 2048;
+
+    // 所有源站都忽略的跟踪参数
+    private static final Set<String> TRACKING_PARAMS = new HashSet<>(Arrays.asList(
+            "fbclid", "gclid", "dclid", "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_ga", "_gl", "spm"));
+    private static final String TRACKING_PREFIX = "utm_";
+
+    // 公共 CDN 上路径已固定版本号时，?v= 等缓存破坏参数不影响内容；
+    // 没有版本号或只有主版本号（@1、@latest）的路径内容会变化，参数保留
+    private static final Set<String> CACHE_BUSTERS = new HashSet<>(Arrays.asList("v", "ver", "version", "_", "t"));
+    private static final Set<String> VERSIONED_CDN_HOSTS = new HashSet<>(Arrays.asList(
+            "cdnjs.cloudflare.com", "cdnjs.loli.net",
+            "cdn.jsdelivr.net", "fastly.jsdelivr.net",
+            "fonts.gstatic.com", "gstatic.loli.net"));
+    // 路径中的完整版本号：/npm/jquery@2.2.3/...、/ajax/libs/jquery/2.2.3/...
+    private static final Pattern VERSIONED_PATH =
+            Pattern.compile("[@/]v?\\d+\\.\\d+\\.\\d+([-+][0-9A-Za-z.-]*)?(/|$)");
+
+    // host -> 该源站额外忽略的参数
+    private final Map<String, Set<String>> originRules = new ConcurrentHashMap<>();
+    // 原始 URL -> 规范化 URL
+    private final Map<String, String> index = new ConcurrentHashMap<>();
+
+    /**
+     * 配置某个源站额外忽略的查询参数（替换原有配置）
+     */
+    public void setIgnoredParams(String host, Collection<String> params) {
+        String key = host.toLowerCase(Locale.ROOT);
+        if (params == null || params.isEmpty()) {
+            originRules.remove(key);
+        } else {
+            originRules.put(key, Collections.unmodifiableSet(new HashSet<>(params)));
+        }
+        // 规则变化后已记录的结果可能失效
+        index.clear();
+    }
+
+    /**
+     * @return 规范化后的 URL，用作缓存键
+     */
+    public String canonicalize(String url) {
+        if (url == null) return null;
+        String cached = index.get(url);
+        if (cached != null) return cached;
+
+        String canonical = compute(url);
+        if (url.length() <= MAX_INDEXED_LENGTH && isHttp(url)) {
+            if (index.size() >= MAX_INDEX_SIZE) {
+                index.clear();
+            }
+            index.put(url, canonical);
+        }
+        return canonical;
+    }
+
+    public int getIndexSize() {
+        return index.size();
+    }
+
+    /**
+     * 清空索引（内存紧张时调用），之后的查找重新解析
+     */
+    public void clearIndex() {
+        index.clear();
+    }
+
+    private String compute(String url) {
+        if (!isHttp(url)) return url;
+        int schemeEnd = url.indexOf("://");
+        String scheme = url.substring(0, schemeEnd).toLowerCase(Locale.ROOT);
+
+        int authorityStart = schemeEnd + 3;
+        int authorityEnd = url.length();
+        for (int i = authorityStart; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '/' || c == '?' || c == '#') {
+                authorityEnd = i;
+                break;
+            }
+        }
+        String authority = url.substring(authorityStart, authorityEnd).toLowerCase(Locale.ROOT);
+        if (scheme.equals("https") && authority.endsWith(":443")) {
+            authority = authority.substring(0, authority.length() - 4);
+        } else if (scheme.equals("http") && authority.endsWith(":80")) {
+            authority = authority.substring(0, authority.length() - 3);
+        }
+
+        int fragment = url.indexOf('#', authorityEnd);
+        String rest = fragment >= 0 ? url.substring(authorityEnd, fragment) : url.substring(authorityEnd);
+        int query = rest.indexOf('?');
+        String path = query >= 0 ? rest.substring(0, query) : rest;
+        if (path.isEmpty()) {
+            path = "/";
+        }
+
+        StringBuilder out = new StringBuilder(url.length());
+        out.append(scheme).append("://").append(authority).append(path);
+        if (query >= 0) {
+            String sorted = canonicalQuery(rest.substring(query + 1), hostOf(authority), path);
+            if (!sorted.isEmpty()) {
+                out.append('?').append(sorted);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * 去掉可忽略的参数，其余按名称排序
+     */
+    private String canonicalQuery(String query, String host, String path) {
+        if (query.isEmpty()) return "";
+        Set<String> ignored = originRules.get(host);
+        boolean versioned = VERSIONED_CDN_HOSTS.contains(host) && VERSIONED_PATH.matcher(path).find();
+        List<String> params = new ArrayList<>();
+        for (String param : query.split("&")) {
+            if (param.isEmpty()) continue;
+            String name = paramName(param);
+            if (TRACKING_PARAMS.contains(name) || name.startsWith(TRACKING_PREFIX)) continue;
+            if (ignored != null && ignored.contains(name)) continue;
+            if (versioned && CACHE_BUSTERS.contains(name)) continue;
+            params.add(param);
+        }
+        // 稳定排序：同名参数保持原顺序
+        Collections.sort(params, (a, b) -> paramName(a).compareTo(paramName(b)));
+        return String.join("&", params);
+    }
+
+    private static String paramName(String param) {
+        int eq = param.indexOf('=');
+        return eq >= 0 ? param.substring(0, eq) : param;
+    }
+
+    private static String hostOf(String authority) {
+        int at = authority.lastIndexOf('@');
+        String hostPort = at >= 0 ? authority.substring(at + 1) : authority;
+        int colon = hostPort.lastIndexOf(':');
+        return colon >= 0 && hostPort.indexOf(']') < colon ? hostPort.substring(0, colon) : hostPort;
+    }
+
+    private static boolean isHttp(String url) {
+        return url.regionMatches(true, 0, "https://", 0, 8) || url.regionMatches(true, 0, "http://", 0, 7);
+    }
+}
@@ -1,42 +1,212 @@
 package link.moely.mobile;
 
+import android.content.Context;
 import android.util.Log;
-import android.webkit.MimeTypeMap;
 import android.webkit.WebResourceResponse;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import okhttp3.Call;
 import okhttp3.Callback;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * WebResourcePrefetcher
  * 用于预加载 H5 静态资源（CSS, JS, 图片, 字体），加速 WebView 首屏渲染。
  * 改进点：
  * 1. 增加了 HTTP 响应头处理，解决 CORS 跨域问题（如字体文件）。
- * 2. 优化了 MIME Type 识别逻辑，支持带参数的 URL。
+ * 2. 优化了 MIME Type 识别逻辑，支持带参数的 URL（现仅在源站未返回 Content-Type 时兜底）。
  * 3. 提供了 clearCache 方法用于释放内存。
+ * 4. 增加磁盘缓存层（DiskResourceCache），冷启动后仍可直接命中，无需重新下载；各层在后台线程打开，不阻塞冷启动。
+ * 5. 内存缓存按字节预算做 LRU 淘汰，被淘汰的资源降级到磁盘而不是丢弃。
+ * 6. 保存源站的 ETag / Last-Modified，过期条目先返回缓存，再在后台发起条件请求重新验证。
+ * 7. 预加载列表由服务端清单（PrefetchManifest）下发，只下载哈希发生变化的资源。
+ * 8. 正在下载的资源登记在 inFlight 中，WebView 请求同一 URL 时等待该下载而不是重复下载。
+ * 9. 流式模式：命中进行中的下载时，WebView 拿到的是边下载边读取的流，首个数据块到达即可开始解析。
+ * 10. 文本类资源压缩后存储（内存和磁盘），命中时流式解压。
+ * 11. 保存源站的 Content-Type 和响应头（ResourceHeaders），不再按扩展名猜测 MIME 类型。
+ * 12. 预加载请求经 PrefetchScheduler 按优先级调度，限制并发，主页面加载时取消延后的请求。
+ * 13. 启动时预连接关键源站（Preconnector），DNS 解析结果跨启动持久化（PersistentDns）。
+ * 14. 按页面模板记录子资源（NavigationTraceRecorder），导航时预测并与 HTML 并行预加载。
+ * 15. 推测性预加载视口内或被按下的链接对应的 HTML 文档（DocumentPrefetchCache），导航时直接返回。
+ * 16. 主页面 HTML 缓存（MainFrameHtmlCache）：先显示上次的页面，后台重新验证，内容变化时通知页面。
+ * 17. 离线模式（ConnectivityMonitor）：只从缓存返回，不发起网络请求，网络恢复后补做下载和重新验证。
+ * 18. 按网络类型（NetworkPolicy）调整预加载深度，计流量网络和流量节省模式下发送 Save-Data。
+ * 19. 支持 Range 请求：完整缓存的资源直接返回切片，音视频按块分段缓存（MediaRangeCache），返回 206。
+ * 20. 按内容寻址（ContentAddressedCache）：不同 URL 下载到的相同内容在内存和磁盘中只保存一份。
+ * 21. 公共库 CDN 镜像（CdnMirrorSelector）：按各镜像的历史耗时选择最快的，慢时同时请求两个镜像；只使用能按固定哈希校验的内容。
+ * 22. 可选的图片压缩优化（ImageTranscoder）：大图按屏幕宽度缩小解码并转为 WebP 后返回和缓存。
+ * 23. WebView 请求路径的命中率、字节数和拦截耗时统计见 RequestMetrics（设置 - 请求统计）。
+ * 24. 首屏静态资源在构建时打包进 APK（BundledAssets），首次启动也无需网络；清单哈希变化后改由网络加载。
+ * 25. 子资源的缓存键经 UrlCanonicalizer 规范化，跟踪参数、片段、大小写不同的同一资源命中同一条缓存。
+ * 26. 后台缓存预热（CacheWarmWorker）：设备空闲时刷新清单资源和主页面并压缩磁盘缓存，冷启动无需前台预加载。
+ * 27. Service Worker 发出的请求（ServiceWorkerClientCompat）同样经过本缓存和进行中下载的合并。
+ * 28. 内存压力（MemoryPressureCoordinator）：按 onTrimMemory 级别分阶段丢弃可重建的副本、降级到磁盘、释放 WebView 内存缓存。
  */
 public class WebResourcePrefetcher {
     private static final String TAG = "WebResourcePrefetcher";
+    private static final String DISK_CACHE_DIR = "web_resources";
+    // 预热时可回收的旧数据达到该大小才压缩磁盘缓存
+    private static final long MIN_COMPACT_BYTES = 256 * 1024;
+    private static final long IDLE_POLL_MS = 500;
+
+    // WebView 请求命中正在下载的资源时最多等待的时间，超时后交还给 WebView 自行加载
+    // 流式模式下只等待响应头，非流式模式下等待完整内容
+    private static final long IN_FLIGHT_WAIT_MS = 5000;
+
+    // WebView 请求经镜像获取时最多等待的时间（含读取响应体），超时后交还给 WebView 自行加载
+    private static final long MIRROR_BUDGET_MS = 3000;
+
+    private static final int READ_CHUNK_SIZE = 8 * 1024;
+
+    // 条件请求在调度器中的键前缀，与同一 URL 的完整下载区分
+    private static final String REVALIDATE_KEY_PREFIX = "revalidate:";
+
+    // 内存缓存默认预算：最大堆的 1/16，且不超过 16MB
+    private static final long DEFAULT_MEMORY_BUDGET_BYTES =
+            Math.min(16L * 1024 * 1024, Runtime.getRuntime().maxMemory() / 16);
     
     // 使用 volatile 确保多线程下的可见性
     private static volatile WebResourcePrefetcher instance;
     
     private final OkHttpClient client;
+
+    // 预加载请求的优先级调度（全局和单域名并发限制）
+    private final PrefetchScheduler scheduler;
+
+    // 持久化 DNS 缓存与启动预连接，和预加载共用同一个连接池
+    private final PersistentDns dns = new PersistentDns();
+    private final Preconnector preconnector = new Preconnector(dns);
+
+    // 公共库的 CDN 镜像选择（记录各镜像的耗时和失败率）
+    private final CdnMirrorSelector mirrors = new CdnMirrorSelector();
+
+    // 清单中给出哈希的资源：规范化 URL -> sha256，镜像返回的内容按它校验
+    private volatile Map<String, String> manifestHashes = Collections.emptyMap();
+
+    // 子资源缓存键的规范化（去掉跟踪参数、片段等）
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+    // 构建时打包进 APK 的首屏静态资源
+    private final BundledAssets bundledAssets = new BundledAssets(canonicalizer);
+
+    // 按页面模板记录的子资源，用于导航时预测并提前下载
+    private final NavigationTraceRecorder navigationTraces = new NavigationTraceRecorder();
+
+    // 推测性预加载的下一页 HTML 文档
+    private final DocumentPrefetchCache documentCache;
+
+    // 主页面 HTML 的 stale-while-revalidate 缓存
+    private final MainFrameHtmlCache mainFrameCache;
+
+    // 音视频的分段缓存，处理 Range 请求
+    private final MediaRangeCache mediaCache;
+
+    // 可选的图片缩小和 WebP 转码
+    private final ImageTranscoder imageTranscoder;
     
-    // 使用 ConcurrentHashMap 保证多线程读写安全
-    private final Map<String, byte[]> resourceCache = new ConcurrentHashMap<>();
+    // 按内容寻址、按总字节数限制的 LRU 内存缓存（内部已同步，可多线程读写）
+    // 不同 URL 的相同内容只保存一份
+    private final ContentAddressedCache resourceCache = new ContentAddressedCache(DEFAULT_MEMORY_BUDGET_BYTES);
+
+    // 磁盘缓存层，调用 init 之后才可用
+    private volatile DiskResourceCache diskCache;
+    private boolean initialized;
+    // 磁盘缓存等各层在后台线程打开，完成后才从缓存返回资源、按清单预加载
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private final ExecutorService initExecutor = Executors.newSingleThreadExecutor();
+
+    // 已解析的磁盘条目元数据（含响应头），磁盘命中时不再重复解析
+    private final Map<String, CachedResource> diskEntries = new ConcurrentHashMap<>();
+
+    // 正在后台重新验证的 URL，避免同一资源重复发起条件请求
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    // 正在下载的资源
+    private final Map<String, InFlightFetch> inFlight = new ConcurrentHashMap<>();
+
+    // 是否以流式响应交给 WebView（默认开启）
+    private volatile boolean streamingEnabled = true;
+
+    // 离线模式：不发起任何网络请求，需要的下载和重新验证记录下来，网络恢复后执行
+    private volatile boolean offline;
+    private final Map<String, Integer> pendingWhileOffline = new ConcurrentHashMap<>();
+
+    // 预加载请求的成败上报给它，init 之后才可用
+    private volatile ConnectivityMonitor connectivity;
+
+    // 按网络类型调整预加载深度（计流量网络、流量节省模式下减少预加载）
+    private volatile NetworkPolicy networkPolicy = NetworkPolicy.DEFAULT;
+
+    /**
+     * 一次进行中的下载
+     */
+    private static final class InFlightFetch {
+        // 下载结束（成功为条目，失败为 null）
+        final CompletableFuture<CachedResource> completed = new CompletableFuture<>();
+        // 响应头到达（或下载失败）时计数归零
+        final CountDownLatch started = new CountDownLatch(1);
+        // 响应头到达后设置；请求失败或状态码错误时保持 null
+        volatile CachedResource responseHeaders;
+        volatile StreamingBuffer body;
+    }
 
     private WebResourcePrefetcher() {
-        this.client = new OkHttpClient();
+        this.client = new OkHttpClient.Builder()
+                .dns(dns)
+                .eventListenerFactory(preconnector)
+                .addInterceptor(chain -> {
+                    // 实际请求的成败交给 ConnectivityMonitor 判断网络是否可用
+                    ConnectivityMonitor monitor = connectivity;
+                    Response response;
+                    try {
+                        response = chain.proceed(chain.request());
+                    } catch (IOException e) {
+                        if (monitor != null && !chain.call().isCanceled()) {
+                            monitor.reportRequestFailure();
+                        }
+                        throw e;
+                    }
+                    if (monitor != null) {
+                        monitor.reportRequestSuccess();
+                    }
+                    return response;
+                })
+                .addInterceptor(mirrors)
+                .addInterceptor(chain -> {
+                    // 计流量网络或流量节省模式下提示服务器返回更小的资源
+                    if (!networkPolicy.saveData()) return chain.proceed(chain.request());
+                    return chain.proceed(chain.request().newBuilder().header("Save-Data", "on").build());
+                })
+                .build();
+        this.preconnector.attach(client);
+        this.mirrors.attach(client);
+        this.documentCache = new DocumentPrefetchCache(client);
+        this.mainFrameCache = new MainFrameHtmlCache(client);
+        this.mediaCache = new MediaRangeCache(client);
+        this.imageTranscoder = new ImageTranscoder(client);
+        this.scheduler = new PrefetchScheduler(client);
+        this.resourceCache.setEvictionListener(this::demoteToDisk);
     }
 
     public static WebResourcePrefetcher getInstance() {
@@ -50,121 +220,965 @@ public class WebResourcePrefetcher {
         return instance;
     }
 
+    /**
+     * 初始化磁盘缓存层，并载入上次保存的 DNS 解析结果
+     * 建议在 Activity onCreate 中、WebView 加载页面之前调用
+     * 打开缓存文件、回放索引和读取 SharedPreferences 在后台线程执行，不阻塞冷启动；
+     * 完成之前 getCachedResponse 返回 null（由 WebView 自己加载），预连接和按清单预加载推迟到完成后
+     */
+    public synchronized void init(Context context) {
+        if (initialized) return;
+        initialized = true;
+
+        Context appContext = context.getApplicationContext();
+        initExecutor.execute(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                openTiers(appContext);
+            } finally {
+                ready.complete(null);
+            }
+            Log.d(TAG, "缓存各层已就绪，耗时 " + (System.currentTimeMillis() - start) + "ms");
+        });
+
+        ConnectivityMonitor monitor = ConnectivityMonitor.getInstance(context);
+        monitor.start();
+        connectivity = monitor;
+        offline = !monitor.isOnline();
+        mediaCache.setOffline(offline);
+        monitor.addListener(online -> setOffline(!online));
+        networkPolicy = monitor.getPolicy();
+        monitor.addPolicyListener(this::setNetworkPolicy);
+
+        MemoryPressureCoordinator memoryPressure = MemoryPressureCoordinator.getInstance();
+        memoryPressure.register("文档预加载", MemoryPressureCoordinator.PRIORITY_SPECULATIVE, this::trimDocumentCache);
+        memoryPressure.register("子资源缓存", MemoryPressureCoordinator.PRIORITY_RESOURCE_CACHE, this::trimResourceCache);
+        memoryPressure.attach(context);
+    }
+
+    /**
+     * 打开各层缓存并载入持久化的记录（在 initExecutor 中执行）
+     */
+    private void openTiers(Context appContext) {
+        dns.load(appContext);
+        mirrors.load(appContext);
+        bundledAssets.open(appContext);
+        mainFrameCache.open(appContext);
+        mediaCache.open(appContext);
+        imageTranscoder.open(appContext);
+        navigationTraces.load(appContext);
+
+        File dir = new File(appContext.getCacheDir(), DISK_CACHE_DIR);
+        DiskResourceCache cache = new DiskResourceCache(dir);
+        try {
+            cache.open();
+            diskCache = cache;
+        } catch (IOException e) {
+            Log.e(TAG, "磁盘缓存初始化失败，仅使用内存缓存", e);
+        }
+    }
+
+    /**
+     * 内存压力下收缩预加载的文档：文档无法降级到磁盘，降级阶段起直接丢弃
+     */
+    private long trimDocumentCache(MemoryPressureCoordinator.Stage stage) {
+        if (stage == MemoryPressureCoordinator.Stage.DROP_DECODED) return 0;
+        long before = documentCache.getResidentBytes();
+        documentCache.clear();
+        return before;
+    }
+
+    /**
+     * 内存压力下收缩子资源内存缓存
+     * - DROP_DECODED：丢弃磁盘上已有的未压缩副本（之后从磁盘映射读取），以及解析过的元数据和 URL 索引
+     * - DEMOTE_TO_DISK：淘汰到预算的 1/4，被淘汰的资源经 demoteToDisk 写入磁盘
+     * - RELEASE：全部降级到磁盘
+     * 只收缩当前内容，预算不变，压力解除后按原预算重新填充
+     */
+    private long trimResourceCache(MemoryPressureCoordinator.Stage stage) {
+        switch (stage) {
+            case DROP_DECODED:
+                diskEntries.clear();
+                canonicalizer.clearIndex();
+                DiskResourceCache disk = diskCache;
+                if (disk == null) return 0;
+                return resourceCache.removeIf((url, entry) -> entry.encoding == null && disk.contains(url));
+            case DEMOTE_TO_DISK:
+                return resourceCache.trimToSize(resourceCache.getMaxBytes() / 4);
+            default:
+                return resourceCache.trimToSize(0);
+        }
+    }
+
+    /**
+     * 设置内存缓存的字节预算，超出部分立即降级到磁盘
+     */
+    public void setMemoryBudget(long maxBytes) {
+        resourceCache.setMaxBytes(maxBytes);
+        Log.d(TAG, "内存缓存预算已调整: " + resourceCache);
+    }
+
+    /**
+     * 内存缓存淘汰回调：磁盘中还没有的资源写入磁盘，保证淘汰后仍能命中
+     */
+    private void demoteToDisk(String url, CachedResource entry) {
+        DiskResourceCache disk = diskCache;
+        if (disk != null && !disk.contains(url)) {
+            disk.put(url, entry.data, entry.toMetadata(), entry.contentKey(url));
+        }
+        Log.d(TAG, "内存缓存淘汰 (" + entry.size() + " bytes): " + url + " -> " + resourceCache);
+    }
+
+    /**
+     * 切换离线模式
+     * 离线时缓存照常命中，但不发起下载和重新验证；恢复在线时补做离线期间记录的请求
+     */
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+        mediaCache.setOffline(offline);
+        if (offline) return;
+
+        if (pendingWhileOffline.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        int scheduled = 0;
+        for (String url : pendingWhileOffline.keySet()) {
+            Integer priority = pendingWhileOffline.remove(url);
+            if (priority != null && prefetch(url, priority, now)) {
+                scheduled++;
+            }
+        }
+        Log.d(TAG, "网络已恢复，补做离线期间的请求 " + scheduled + " 项");
+    }
+
+    public boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * 更新网络策略；策略收紧时取消已排队、超出新策略允许范围的预加载
+     */
+    public void setNetworkPolicy(NetworkPolicy policy) {
+        NetworkPolicy previous = networkPolicy;
+        networkPolicy = policy;
+        if (policy.maxPrefetchPriority() < previous.maxPrefetchPriority()) {
+            scheduler.cancelBelow(policy.maxPrefetchPriority());
+        }
+        Log.d(TAG, "预加载策略: " + policy);
+    }
+
+    public NetworkPolicy getNetworkPolicy() {
+        return networkPolicy;
+    }
+
+    /**
+     * 开启/关闭流式模式：关闭后命中进行中的下载时会等待完整内容再返回
+     */
+    public void setStreamingEnabled(boolean enabled) {
+        this.streamingEnabled = enabled;
+    }
+
+    /**
+     * 预连接首屏依赖的源站（DNS + TLS 握手），不阻塞调用线程
+     * 应在 init 之后、预加载和 WebView 加载页面之前调用
+     */
+    public void preconnect() {
+        // 等持久化的 DNS 记录载入后再预连接
+        ready.thenRun(preconnector::preconnect);
+    }
+
+    /**
+     * 预连接和 DNS 缓存节省的时间统计
+     */
+    public String getPreconnectStats() {
+        return preconnector.describeStats();
+    }
+
+    /**
+     * 主页面开始加载：取消排队中和执行中的延后优先级预加载，把带宽让给页面
+     * CSS/字体和关键 JS 继续下载，页面很可能马上就要用到
+     */
+    public void onMainFrameStarted() {
+        scheduler.cancelBelow(PrefetchScheduler.PRIORITY_CRITICAL);
+    }
+
+    /**
+     * 预加载页面上报的候选链接（HTML 文档）
+     * @param urgent 用户已按下该链接
+     * @param userAgent WebView 的 User-Agent，服务器可能按它返回不同页面
+     */
+    public void prefetchDocuments(List<String> urls, boolean urgent, String userAgent) {
+        if (offline) return;
+        NetworkPolicy policy = networkPolicy;
+        if (urgent ? !policy.allowTouchDocumentPrefetch() : !policy.allowViewportDocumentPrefetch()) return;
+        documentCache.prefetch(urls, urgent, userAgent);
+    }
+
+    /**
+     * 主页面导航时取出预加载的文档，没有时返回 null
+     * 注意：命中进行中的预加载时会阻塞等待，只能在 shouldInterceptRequest 等后台线程调用
+     */
+    public WebResourceResponse getPrefetchedDocument(String url) {
+        return documentCache.take(url);
+    }
+
+    /**
+     * 主页面导航时返回上次缓存的 HTML（同时后台重新验证）；没有缓存时由原生层下载并保存，
+     * 交给 WebView 的就是这一次下载的内容；都不可用时返回 null
+     * 注意：没有缓存时阻塞等待网络，只能在 shouldInterceptRequest 等后台线程调用
+     * @param requestHeaders WebView 的请求头
+     * @param forceNetwork 用户刷新：在线时不使用缓存，下载最新的页面（同时更新缓存）
+     */
+    public WebResourceResponse getMainFrameResponse(String url, Map<String, String> requestHeaders,
+                                                    boolean forceNetwork) {
+        if (!offline) {
+            WebResourceResponse cached = forceNetwork ? null : mainFrameCache.serve(url, true);
+            return cached != null ? cached : mainFrameCache.fetch(url, requestHeaders);
+        }
+        WebResourceResponse cached = mainFrameCache.serve(url, false);
+        if (cached != null) {
+            Log.d(TAG, "离线模式: 使用缓存的页面 " + url);
+            return cached;
+        }
+        Log.d(TAG, "离线模式: 页面未缓存 " + url);
+        return MainFrameHtmlCache.offlinePage();
+    }
+
+    /**
+     * 设置主页面缓存内容变化的回调，Activity 销毁时应传 null
+     */
+    public void setMainFrameUpdateListener(MainFrameHtmlCache.UpdateListener listener) {
+        mainFrameCache.setUpdateListener(listener);
+    }
+
+    /**
+     * WebView 当前的 User-Agent，主页面缓存在后台请求时使用
+     */
+    public void setWebViewUserAgent(String userAgent) {
+        mainFrameCache.setUserAgent(userAgent);
+        mediaCache.setUserAgent(userAgent);
+        imageTranscoder.setUserAgent(userAgent);
+    }
+
+    /**
+     * 主页面加载完成：保存本次导航的子资源记录
+     */
+    public void onMainFrameFinished(String url) {
+        navigationTraces.saveAsync();
+    }
+
+    /**
+     * 内存缓存的驻留字节数
+     */
+    public long getMemoryResidentBytes() {
+        return resourceCache.getResidentBytes();
+    }
+
+    /**
+     * 压缩存储的统计（节省的字节数与 CPU 耗时）
+     */
+    public String getCompressionStats() {
+        return ResourceCompression.describeStats();
+    }
+
+    /**
+     * 音视频分段缓存的统计
+     */
+    public String getMediaCacheStats() {
+        return mediaCache.describeStats();
+    }
+
+    /**
+     * 按内容去重节省的字节数（内存、磁盘）
+     */
+    public String getDedupStats() {
+        DiskResourceCache disk = diskCache;
+        return "内容去重: 内存 " + resourceCache.getDedupBytes() + " bytes，磁盘 "
+                + (disk != null ? disk.getDedupBytes() : 0) + " bytes";
+    }
+
+    /**
+     * 内存缓存累计淘汰次数
+     */
+    public long getMemoryEvictionCount() {
+        return resourceCache.getEvictionCount();
+    }
+
+    /**
+     * 按服务端清单预加载
+     * 先请求远程清单，失败（例如离线）时回退到本地保存的清单或 APK 内置清单
+     */
+    public void prefetchFromManifest(Context context) {
+        Context appContext = context.getApplicationContext();
+        // 磁盘缓存打开之前无法判断哪些资源已缓存，等就绪后再按清单预加载
+        ready.thenRun(() -> fetchManifest(appContext));
+    }
+
+    private void fetchManifest(Context appContext) {
+        if (offline) {
+            // 离线时直接使用本地清单，缺失的资源记录下来，网络恢复后下载
+            applyManifest(PrefetchManifest.loadLocal(appContext));
+            return;
+        }
+        Request request = new Request.Builder().url(PrefetchManifest.MANIFEST_URL).build();
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "获取预加载清单失败，使用本地清单", e);
+                applyManifest(PrefetchManifest.loadLocal(appContext));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                applyManifest(readManifest(appContext, response));
+            }
+        });
+    }
+
+    /**
+     * 解析清单响应并保存；响应错误或格式错误时回退到本地清单
+     */
+    private static PrefetchManifest readManifest(Context appContext, Response response) throws IOException {
+        PrefetchManifest manifest = null;
+        try {
+            if (response.isSuccessful() && response.body() != null) {
+                String json = response.body().string();
+                manifest = PrefetchManifest.parse(json);
+                if (manifest != null) {
+                    PrefetchManifest.save(appContext, json);
+                }
+            } else {
+                Log.w(TAG, "预加载清单响应错误: " + response.code());
+            }
+        } finally {
+            response.close();
+        }
+        return manifest != null ? manifest : PrefetchManifest.loadLocal(appContext);
+    }
+
+    /**
+     * 后台缓存预热（CacheWarmWorker 在设备空闲、充电且连接不计流量网络时调用）：
+     * 重新获取清单并下载 / 重新验证其中的资源，重新验证已缓存的主页面，
+     * 等这些请求完成后压缩磁盘缓存，回收被覆盖的旧数据。
+     * 注意：同步执行，只能在后台线程调用
+     * @param timeoutMs 等待网络请求完成的上限
+     * @return 所有请求是否在时限内完成
+     */
+    public boolean warmCache(Context context, long timeoutMs) {
+        init(context);
+        ready.join();
+        Context appContext = context.getApplicationContext();
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        if (!offline) {
+            Request request = new Request.Builder().url(PrefetchManifest.MANIFEST_URL).build();
+            try {
+                applyManifest(readManifest(appContext, client.newCall(request).execute()));
+            } catch (IOException e) {
+                Log.w(TAG, "预热: 获取清单失败，使用本地清单", e);
+                applyManifest(PrefetchManifest.loadLocal(appContext));
+            }
+            int documents = mainFrameCache.revalidateAll();
+            Log.d(TAG, "预热: 重新验证主页面 " + documents + " 项");
+        }
+
+        boolean idle = awaitIdle(deadline);
+        if (!idle) {
+            Log.w(TAG, "预热: 等待网络请求超时，仍有请求未完成");
+        }
+
+        DiskResourceCache disk = diskCache;
+        long reclaimed = disk != null ? disk.compact(MIN_COMPACT_BYTES) : 0;
+        reclaimed += mainFrameCache.compact(MIN_COMPACT_BYTES);
+        Log.d(TAG, "预热完成，磁盘缓存回收 " + reclaimed + " bytes");
+        return idle;
+    }
+
+    /**
+     * 等待预加载、重新验证和主页面后台请求全部结束
+     */
+    private boolean awaitIdle(long deadline) {
+        while (System.currentTimeMillis() < deadline) {
+            if (inFlight.isEmpty() && revalidating.isEmpty() && scheduler.getQueuedCount() == 0
+                    && scheduler.getRunningCount() == 0 && mainFrameCache.isIdle()) {
+                return true;
+            }
+            try {
+                Thread.sleep(IDLE_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按清单逐条处理（已按优先级排序）：
+     * 清单给出哈希时，只有缓存缺失或哈希不一致才下载，哈希一致则无需任何请求；
+     * 没有哈希时按普通 HTTP 缓存语义处理。
+     */
+    private void applyManifest(PrefetchManifest manifest) {
+        if (manifest == null) {
+            Log.e(TAG, "没有可用的预加载清单");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        NetworkPolicy policy = networkPolicy;
+        bundledAssets.applyManifest(manifest);
+        Map<String, String> hashes = new HashMap<>();
+        for (PrefetchManifest.Entry item : manifest.getEntries()) {
+            if (item.getSha256() != null) {
+                hashes.put(canonicalizer.canonicalize(item.getUrl()), item.getSha256());
+            }
+        }
+        manifestHashes = hashes;
+        int scheduled = 0;
+        int skipped = 0;
+        for (PrefetchManifest.Entry item : manifest.getEntries()) {
+            String url = canonicalizer.canonicalize(item.getUrl());
+            String expectedHash = item.getSha256();
+            int priority = item.getPriority();
+            if (priority > policy.maxPrefetchPriority()) {
+                skipped++;
+                continue;
+            }
+            // APK 内置的版本与清单哈希一致，无需下载
+            if (expectedHash != null && bundledAssets.matchesHash(url, expectedHash)) {
+                continue;
+            }
+            CachedResource entry = lookup(url);
+            if (entry == null) {
+                fetch(url, expectedHash, priority);
+                scheduled++;
+            } else if (expectedHash != null) {
+                if (!entry.matchesHash(expectedHash)) {
+                    fetch(url, expectedHash, priority);
+                    scheduled++;
+                }
+            } else if (entry.isStale(now)) {
+                revalidate(url, entry, priority);
+                scheduled++;
+            }
+        }
+        Log.d(TAG, "清单 v" + manifest.getVersion() + ": 共 " + manifest.getEntries().size()
+                + " 项，需要网络请求 " + scheduled + " 项，按网络策略跳过 " + skipped + " 项");
+    }
+
     /**
      * 启动预加载
+     * 未缓存的资源直接下载；已缓存但过期的资源发起条件请求重新验证
+     * 优先级按资源类型推断（CSS/字体 > JS > 其他）
      * @param urls 需要预加载的 CSS 或 JS 文件的完整 URL
      */
     public void prefetch(String... urls) {
+        long now = System.currentTimeMillis();
+        int maxPriority = networkPolicy.maxPrefetchPriority();
         for (String url : urls) {
-            if (resourceCache.containsKey(url)) continue; // 避免重复下载
+            int priority = PrefetchScheduler.priorityFor(url);
+            if (priority <= maxPriority) {
+                prefetch(canonicalizer.canonicalize(url), priority, now);
+            }
+        }
+    }
+
+    /**
+     * @return 是否发起了网络请求
+     */
+    private boolean prefetch(String url, int priority, long now) {
+        CachedResource entry = lookup(url);
+        if (entry == null) {
+            fetch(url, null, priority);
+            return true;
+        } else if (entry.isStale(now)) {
+            revalidate(url, entry, priority);
+            return true;
+        }
+        // 新鲜的缓存无需任何网络请求
+        return false;
+    }
+
+    /**
+     * 记录 WebView 发出的请求（在 shouldInterceptRequest 中调用）
+     * 主页面请求：开始新的导航记录，并按该页面模板的历史记录预加载可能用到的子资源，与 HTML 并行下载；
+     * 子资源请求：记入当前页面模板的记录。
+     */
+    public void recordRequest(String url, String method, boolean isForMainFrame) {
+        if (!"GET".equals(method)) return;
+        if (!isForMainFrame) {
+            navigationTraces.recordSubresource(canonicalizer.canonicalize(url));
+            return;
+        }
+
+        List<String> predicted = navigationTraces.beginNavigation(url);
+        int limit = networkPolicy.maxPredictions();
+        if (predicted.size() > limit) {
+            predicted = predicted.subList(0, limit);
+        }
+        if (predicted.isEmpty()) return;
+        long now = System.currentTimeMillis();
+        int scheduled = 0;
+        for (String resource : predicted) {
+            // 预测的资源马上就要用到，不低于关键 JS 的优先级，避免被 onMainFrameStarted 取消
+            int priority = Math.min(PrefetchScheduler.priorityFor(resource), PrefetchScheduler.PRIORITY_CRITICAL);
+            if (prefetch(resource, priority, now)) {
+                scheduled++;
+            }
+        }
+        Log.d(TAG, "按导航记录预测 " + predicted.size() + " 项子资源，需要网络请求 " + scheduled + " 项: " + url);
+    }
+
+    /**
+     * 下载资源
+     * @param expectedSha256 清单中的哈希，不为空时校验下载内容，不一致则丢弃
+     */
+    private void fetch(String url, String expectedSha256, int priority) {
+        if (offline) {
+            pendingWhileOffline.putIfAbsent(url, priority);
+            return;
+        }
+        InFlightFetch fetch = new InFlightFetch();
+        if (inFlight.putIfAbsent(url, fetch) != null) {
+            return; // 同一 URL 已在下载中，合并为一次请求
+        }
+
+        // 已知公共库有固定哈希时从当前最快的镜像下载，校验后仍以原 URL 保存
+        String verifyHash = expectedSha256 != null ? expectedSha256 : pinnedHash(url);
+        Request request = new Request.Builder()
+                .url(verifyHash != null ? mirrors.preferredUrl(url) : url)
+                .build();
+        boolean submitted = scheduler.submit(url, request, priority, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.e(TAG, "预加载失败: " + url, e);
+                finishInFlight(url, fetch, null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                CachedResource result = null;
+                ResponseBody responseBody = response.body();
+                try {
+                    if (!response.isSuccessful() || responseBody == null) {
+                        Log.w(TAG, "预加载响应错误: " + response.code() + " - " + url);
+                        return;
+                    }
 
-            Request request = new Request.Builder().url(url).build();
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    Log.e(TAG, "预加载失败: " + url, e);
+                    // 响应头已到达：先公开流式缓冲区，等待中的 WebView 请求可以立即开始读取
+                    StreamingBuffer buffer = new StreamingBuffer(responseBody.contentLength());
+                    fetch.responseHeaders = CachedResource.fromResponseHeaders(url, response);
+                    fetch.body = buffer;
+                    fetch.started.countDown();
+
+                    try (InputStream in = responseBody.byteStream()) {
+                        byte[] chunk = new byte[READ_CHUNK_SIZE];
+                        int n;
+                        while ((n = in.read(chunk)) != -1) {
+                            buffer.write(chunk, 0, n);
+                        }
+                        buffer.finish();
+                    } catch (IOException e) {
+                        buffer.fail(e);
+                        Log.e(TAG, "预加载读取失败: " + url, e);
+                        return;
+                    }
+
+                    byte[] bytes = buffer.toByteArray();
+                    CachedResource entry = CachedResource.fromResponse(url, response, bytes);
+                    if (verifyHash != null && !entry.matchesHash(verifyHash)) {
+                        Log.w(TAG, "预加载内容与固定哈希不一致，已丢弃: " + url);
+                        return;
+                    }
+                    store(url, entry);
+                    result = entry;
+                    Log.d(TAG, "预加载成功 (" + bytes.length + " bytes): " + url);
+                } finally {
+                    response.close();
+                    // 先写入缓存再移出登记表，期间到达的请求不会两头落空
+                    finishInFlight(url, fetch, result);
                 }
+            }
+        });
+        if (!submitted) {
+            // 上一次同 URL 的请求刚结束、尚未从调度器移除，本次放弃
+            finishInFlight(url, fetch, null);
+        }
+    }
+
+    private void finishInFlight(String url, InFlightFetch fetch, CachedResource result) {
+        inFlight.remove(url, fetch);
+        fetch.started.countDown();
+        fetch.completed.complete(result);
+    }
+
+    /**
+     * 等待正在进行的同一 URL 下载
+     * 流式模式下响应头到达即返回边下载边读取的响应；否则等待完整内容
+     * @return 没有进行中的下载、下载失败或超时均返回 null
+     */
+    private WebResourceResponse awaitInFlight(String url) {
+        InFlightFetch fetch = inFlight.get(url);
+        if (fetch == null) return null;
+        // WebView 正在等待，排队中的请求立即提到最前
+        scheduler.promote(url);
+
+        long start = System.currentTimeMillis();
+        try {
+            if (streamingEnabled) {
+                if (!fetch.started.await(IN_FLIGHT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "等待预加载响应头超时，交给 WebView 加载: " + url);
+                    return null;
+                }
+                CachedResource headers = fetch.responseHeaders;
+                StreamingBuffer body = fetch.body;
+                if (headers == null || body == null) return null;
+                Log.d(TAG, "WebView 流式读取进行中的预加载 (等待 "
+                        + (System.currentTimeMillis() - start) + "ms): " + url);
+                return buildResponse(headers, body.newInputStream());
+            }
+
+            CachedResource entry = fetch.completed.get(IN_FLIGHT_WAIT_MS, TimeUnit.MILLISECONDS);
+            if (entry == null) return null;
+            Log.d(TAG, "WebView 等待进行中的预加载 " + (System.currentTimeMillis() - start) + "ms: " + url);
+            return buildResponse(entry, entry.decode(new ByteArrayInputStream(entry.data)));
+        } catch (TimeoutException e) {
+            Log.w(TAG, "等待预加载超时，交给 WebView 加载: " + url);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.w(TAG, "等待预加载失败: " + url, e);
+        }
+        return null;
+    }
+
+    /**
+     * 后台条件请求：304 只刷新新鲜度，200 替换内容
+     */
+    private void revalidate(String url, CachedResource entry, int priority) {
+        if (offline) {
+            pendingWhileOffline.putIfAbsent(url, priority);
+            return;
+        }
+        if (!revalidating.add(url)) return;
+
+        // 没有校验器时不带条件头，相当于完整下载
+        Request.Builder builder = new Request.Builder().url(url);
+        if (entry.etag != null) {
+            builder.header("If-None-Match", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            builder.header("If-Modified-Since", entry.lastModified);
+        }
 
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    if (response.isSuccessful() && response.body() != null) {
-                        // 将数据存入内存
+        boolean submitted = scheduler.submit(REVALIDATE_KEY_PREFIX + url, builder.build(), priority, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                revalidating.remove(url);
+                Log.w(TAG, "重新验证失败，继续使用旧缓存: " + url, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (response.code() == 304) {
+                        CachedResource refreshed = entry.revalidated(response);
+                        DiskResourceCache disk = diskCache;
+                        if (disk != null) {
+                            disk.updateMetadata(url, refreshed.toMetadata());
+                        }
+                        diskEntries.remove(url);
+                        // 只有内存中已有内容时才更新内存条目，不把磁盘内容读入内存
+                        CachedResource inMemory = refreshed.data != null ? refreshed : resourceCache.get(url);
+                        if (inMemory != null) {
+                            resourceCache.put(url, refreshed.withData(inMemory.data));
+                        }
+                        Log.d(TAG, "重新验证: 304 未修改 " + url);
+                    } else if (response.isSuccessful() && response.body() != null) {
                         byte[] bytes = response.body().bytes();
-                        resourceCache.put(url, bytes);
-                        Log.d(TAG, "预加载成功 (" + bytes.length + " bytes): " + url);
+                        store(url, CachedResource.fromResponse(url, response, bytes));
+                        Log.d(TAG, "重新验证: 内容已更新 (" + bytes.length + " bytes) " + url);
                     } else {
-                        Log.w(TAG, "预加载响应错误: " + response.code() + " - " + url);
+                        Log.w(TAG, "重新验证响应错误: " + response.code() + " - " + url);
                     }
+                } finally {
+                    revalidating.remove(url);
                     response.close();
                 }
-            });
+            }
+        });
+        if (!submitted) {
+            revalidating.remove(url);
         }
     }
 
+    /**
+     * 保存新下载的资源：先落盘再放入内存，内存淘汰时就无需重复写盘
+     */
+    private void store(String url, CachedResource rawEntry) {
+        CachedResource entry = rawEntry.compressedIfWorthwhile();
+        if (entry != rawEntry) {
+            Log.d(TAG, "压缩存储 " + entry.rawSize + " -> " + entry.size() + " bytes: " + url);
+        }
+        DiskResourceCache disk = diskCache;
+        if (disk != null) {
+            disk.put(url, entry.data, entry.toMetadata(), entry.contentKey(url));
+        }
+        diskEntries.remove(url);
+        resourceCache.put(url, entry);
+    }
+
+    /**
+     * 查找缓存条目（仅元数据用于判断新鲜度，不会把磁盘内容读入内存）
+     */
+    private CachedResource lookup(String url) {
+        CachedResource entry = resourceCache.get(url);
+        if (entry != null) return entry;
+        return lookupDisk(url);
+    }
+
+    /**
+     * 磁盘条目的元数据：首次访问时解析一次，之后复用同一个对象
+     */
+    private CachedResource lookupDisk(String url) {
+        CachedResource entry = diskEntries.get(url);
+        if (entry != null) return entry;
+        DiskResourceCache disk = diskCache;
+        if (disk == null) return null;
+        Map<String, String> meta = disk.getMetadata(url);
+        if (meta == null) return null;
+        entry = CachedResource.fromMetadata(url, meta);
+        diskEntries.put(url, entry);
+        return entry;
+    }
+
+    /**
+     * 内存或磁盘中是否已有该资源
+     */
+    public boolean isCached(String url) {
+        url = canonicalizer.canonicalize(url);
+        if (resourceCache.containsKey(url)) return true;
+        DiskResourceCache disk = diskCache;
+        return disk != null && disk.contains(url);
+    }
+
     /**
      * 获取缓存的资源响应，供 WebView 使用
+     * URL 先规范化（结果有索引，同一 URL 只解析一次），之后依次查内存、磁盘、APK 内置资源，
+     * 每一层只查一次；磁盘命中时直接从映射区读取，不拷贝为 byte[]
+     * 过期条目照常返回（stale-while-revalidate），同时在后台重新验证
+     * 注意：命中进行中的下载时会阻塞等待，只能在 shouldInterceptRequest 等后台线程调用
      */
     public WebResourceResponse getCachedResponse(String url) {
-        // 检查内存中是否有该 URL 的数据
-        if (resourceCache.containsKey(url)) {
-            byte[] data = resourceCache.get(url);
-            if (data != null) {
-                String mimeType = determineMimeType(url);
-                Log.d(TAG, "WebView 命中内存缓存: " + url + " [" + mimeType + "]");
-
-                // 【关键改进】构建响应头
-                // 尤其是 Access-Control-Allow-Origin，缺少它会导致字体文件 (.woff2) 跨域报错
-                Map<String, String> headers = new HashMap<>();
-                headers.put("Access-Control-Allow-Origin", "*");
-                headers.put("Cache-Control", "max-age=31536000, immutable");
+        // 冷启动时各层尚未打开，不等待，直接交给 WebView
+        if (!ready.isDone()) return null;
+        url = canonicalizer.canonicalize(url);
+        long now = System.currentTimeMillis();
+        CachedResource entry = resourceCache.get(url);
+        if (entry != null) {
+            Log.d(TAG, "WebView 命中内存缓存: " + url);
+            if (entry.isStale(now)) {
+                revalidate(url, entry, PrefetchScheduler.PRIORITY_DEFERRED);
+            }
+            return buildResponse(entry, entry.decode(new ByteArrayInputStream(entry.data)));
+        }
 
-                try {
-                    // 使用带 header 的构造函数 (API 21+)
-                    return new WebResourceResponse(
-                            mimeType,
-                            "UTF-8",
-                            200,
-                            "OK",
-                            headers,
-                            new ByteArrayInputStream(data)
-                    );
-                } catch (Exception e) {
-                    // 极低版本兼容回退
-                    return new WebResourceResponse(
-                            mimeType, 
-                            "UTF-8", 
-                            new ByteArrayInputStream(data)
-                    );
+        DiskResourceCache disk = diskCache;
+        if (disk != null) {
+            ByteBuffer mapped = disk.get(url);
+            CachedResource diskEntry = mapped != null ? lookupDisk(url) : null;
+            if (diskEntry != null) {
+                Log.d(TAG, "WebView 命中磁盘缓存: " + url);
+                if (diskEntry.isStale(now)) {
+                    revalidate(url, diskEntry, PrefetchScheduler.PRIORITY_DEFERRED);
                 }
+                return buildResponse(diskEntry, diskEntry.decode(new ByteBufferInputStream(mapped)));
             }
         }
+
+        // 没有（更新过的）缓存时返回 APK 内置版本；已被清单中的新哈希取代时返回 null
+        WebResourceResponse bundled = bundledAssets.serve(url);
+        if (bundled != null) {
+            return bundled;
+        }
+
+        // 缓存未命中但正在预加载：复用这次下载，避免 WebView 重复下载同一份数据
+        WebResourceResponse inFlightResponse = awaitInFlight(url);
+        if (inFlightResponse != null) {
+            return inFlightResponse;
+        }
         return null; // 没有缓存，让 WebView 自己去网络加载
     }
 
     /**
-     * 【关键改进】更健壮的 MIME Type 获取逻辑
-     * 能够处理类似 style.css?v=1.0 这样的带参数 URL
+     * 开启/关闭图片压缩优化（设置项），maxWidthPx 为屏幕宽度像素
+     */
+    public void setImageTranscoding(boolean enabled, int maxWidthPx) {
+        imageTranscoder.configure(enabled, maxWidthPx);
+    }
+
+    public String getBundledAssetStats() {
+        return bundledAssets.describeStats();
+    }
+
+    /**
+     * 图片压缩优化开启时，返回按屏幕宽度缩小并转为 WebP 的图片，编码质量随网络策略调整；
+     * 没有转码结果时由转码器下载原图（每张图只下载一次），转码未及时完成时返回原图；
+     * 未开启、不是 JPEG / PNG、离线、近期失败过或下载失败时返回 null，由 WebView 自己加载
+     */
+    public WebResourceResponse getTranscodedImage(String url, Map<String, String> requestHeaders) {
+        if (offline || !imageTranscoder.isEnabled()) return null;
+        return imageTranscoder.serve(url, ImageTranscoder.qualityFor(networkPolicy), requestHeaders);
+    }
+
+    public String getImageTranscodeStats() {
+        return imageTranscoder.describeStats();
+    }
+
+    /**
+     * 清单或 APK 内置资源给出的固定哈希；都没有时返回 null
+     */
+    private String pinnedHash(String url) {
+        String hash = manifestHashes.get(url);
+        return hash != null ? hash : bundledAssets.hashFor(url);
+    }
+
+    /**
+     * 缓存未命中的已知公共库（jquery、bootstrap 等）：从最快的可用镜像获取，
+     * 首选镜像慢时同时请求第二个镜像，内容与固定哈希（清单或内置资源）一致时以原 URL 保存并返回；
+     * 不是已知公共库、没有固定哈希、校验失败或超过 MIRROR_BUDGET_MS 时返回 null
+     * 注意：阻塞等待网络，只能在 shouldInterceptRequest 等后台线程调用
      */
-    private String determineMimeType(String url) {
-        String cleanUrl = url;
-        
-        // 去除 URL 参数（例如 ?v=123）以便正确判断后缀
-        if (url.contains("?")) {
-            cleanUrl = url.split("\\?")[0];
+    public WebResourceResponse getMirroredResponse(String url) {
+        if (offline) return null;
+        url = canonicalizer.canonicalize(url);
+        String expectedHash = pinnedHash(url);
+        if (expectedHash == null) return null;
+        List<String> candidates = CdnMirrorSelector.candidatesFor(url);
+        if (candidates.size() < 2) return null;
+
+        List<String> ranked = mirrors.rank(candidates);
+        try (Response response = mirrors.fetch(ranked, MIRROR_BUDGET_MS)) {
+            ResponseBody body = response.body();
+            if (body == null) return null;
+            byte[] bytes = body.bytes();
+            CachedResource entry = CachedResource.fromResponse(url, response, bytes);
+            if (!entry.matchesHash(expectedHash)) {
+                Log.w(TAG, "镜像内容与固定哈希不一致，交给 WebView 加载: " + url + " <- " + response.request().url());
+                return null;
+            }
+            store(url, entry);
+            Log.d(TAG, "经镜像获取 (" + bytes.length + " bytes): " + url + " <- " + response.request().url());
+            return buildResponse(entry, new ByteArrayInputStream(bytes));
+        } catch (IOException e) {
+            Log.w(TAG, "所有镜像均失败，交给 WebView 加载: " + url + " - " + e.getMessage());
+            return null;
         }
-        cleanUrl = cleanUrl.toLowerCase();
+    }
 
-        // 1. 尝试使用系统 MimeTypeMap
-        String extension = MimeTypeMap.getFileExtensionFromUrl(cleanUrl);
-        String mimeType = null;
-        if (extension != null) {
-            mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
+    public String getMirrorStats() {
+        return mirrors.describeStats();
+    }
+
+    /**
+     * 请求是否带有 Range 头（媒体拖动进度、分段加载）
+     */
+    public static boolean isRangeRequest(Map<String, String> requestHeaders) {
+        return MediaRangeCache.header(requestHeaders, "Range") != null;
+    }
+
+    /**
+     * 处理带 Range 头的请求，返回 206 响应：
+     * 已完整缓存且未压缩存储的资源直接返回内存数据或磁盘映射区的切片；
+     * 音频、视频交给分段缓存，按块从磁盘返回，缺少的块从网络补齐。
+     * 无法处理时返回 null，由 WebView 自己加载
+     * 注意：可能同步请求网络，只能在 shouldInterceptRequest 等后台线程调用
+     */
+    public WebResourceResponse getRangeResponse(String url, Map<String, String> requestHeaders) {
+        String rangeHeader = MediaRangeCache.header(requestHeaders, "Range");
+        if (rangeHeader == null) return null;
+        url = canonicalizer.canonicalize(url);
+
+        CachedResource entry = resourceCache.get(url);
+        if (entry != null && entry.encoding == null) {
+            long[] range = MediaRangeCache.parseRange(rangeHeader, entry.data.length);
+            if (range != null) {
+                Log.d(TAG, "Range 请求命中内存缓存: " + url);
+                InputStream data = new ByteArrayInputStream(entry.data, (int) range[0], (int) (range[1] - range[0] + 1));
+                return MediaRangeCache.partialResponse(entry.headers.mimeType,
+                        new HashMap<>(entry.headers.responseHeaders), range[0], range[1], entry.data.length, data);
+            }
         }
 
-        // 2. 如果系统识别失败，使用手动后备列表
-        if (mimeType == null) {
-            if (cleanUrl.endsWith(".css")) return "text/css";
-            if (cleanUrl.endsWith(".js")) return "application/javascript";
-            if (cleanUrl.endsWith(".json")) return "application/json";
-            if (cleanUrl.endsWith(".jpg") || cleanUrl.endsWith(".jpeg")) return "image/jpeg";
-            if (cleanUrl.endsWith(".png")) return "image/png";
-            if (cleanUrl.endsWith(".gif")) return "image/gif";
-            if (cleanUrl.endsWith(".svg")) return "image/svg+xml";
-            if (cleanUrl.endsWith(".woff")) return "font/woff";
-            if (cleanUrl.endsWith(".woff2")) return "font/woff2"; // 常见字体
-            if (cleanUrl.endsWith(".ttf")) return "font/ttf";
-            return "text/plain"; // 默认兜底
+        DiskResourceCache disk = diskCache;
+        ByteBuffer mapped = disk != null ? disk.get(url) : null;
+        CachedResource diskEntry = mapped != null ? lookupDisk(url) : null;
+        if (diskEntry != null && diskEntry.encoding == null) {
+            long total = mapped.remaining();
+            long[] range = MediaRangeCache.parseRange(rangeHeader, total);
+            if (range != null) {
+                Log.d(TAG, "Range 请求命中磁盘缓存: " + url);
+                mapped.position(mapped.position() + (int) range[0]);
+                mapped.limit(mapped.position() + (int) (range[1] - range[0] + 1));
+                return MediaRangeCache.partialResponse(diskEntry.headers.mimeType,
+                        new HashMap<>(diskEntry.headers.responseHeaders), range[0], range[1], total,
+                        new ByteBufferInputStream(mapped.slice()));
+            }
+        }
+
+        if (MediaRangeCache.isMedia(url)) {
+            return mediaCache.serve(url, rangeHeader, requestHeaders);
+        }
+        return null;
+    }
+
+    /**
+     * 使用下载时保存的 MIME 类型、字符集和源站响应头构建响应
+     * 这些值在条目创建时已确定且不可变，命中时不做任何字符串处理
+     */
+    private WebResourceResponse buildResponse(CachedResource entry, InputStream data) {
+        ResourceHeaders headers = entry.headers;
+        try {
+            // 使用带 header 的构造函数 (API 21+)
+            return new WebResourceResponse(
+                    headers.mimeType,
+                    headers.charset,
+                    200,
+                    "OK",
+                    headers.responseHeaders,
+                    data
+            );
+        } catch (Exception e) {
+            // 极低版本兼容回退
+            return new WebResourceResponse(
+                    headers.mimeType,
+                    headers.charset,
+                    data
+            );
         }
-        
-        return mimeType;
     }
 
     /**
      * 【新增】清空缓存
      * 建议在 Activity onDestroy 时调用，防止内存泄漏
+     * 仅清空内存缓存，磁盘缓存保留到下次启动
      */
     public void clearCache() {
         resourceCache.clear();
+        documentCache.clear();
         Log.d(TAG, "内存缓存已手动清空");
     }
+
+    /**
+     * 清空内存和磁盘缓存（用户在设置中清除缓存时调用）
+     */
+    public void clearDiskCache() {
+        resourceCache.clear();
+        diskEntries.clear();
+        mainFrameCache.clear();
+        mediaCache.clear();
+        imageTranscoder.clear();
+        DiskResourceCache disk = diskCache;
+        if (disk != null) {
+            disk.clear();
+        }
+    }
 }
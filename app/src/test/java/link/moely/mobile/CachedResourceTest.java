@@ -0,0 +1,100 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+public class CachedResourceTest {
+
+    private static final String URL = "https://www.moely.link/css/style.css";
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    @Test
+    public void notModifiedWithoutFreshnessKeepsStoredMaxAge() {
+        CachedResource stored = CachedResource.fromResponse(URL,
+                response(200, "Cache-Control", "max-age=3600", "ETag", "\"v1\""),
+                "body".getBytes(StandardCharsets.UTF_8));
+
+        long before = System.currentTimeMillis();
+        CachedResource refreshed = stored.revalidated(response(304, "ETag", "\"v1\""));
+
+        assertFresh(refreshed, before, HOUR_MS);
+        assertEquals("\"v1\"", refreshed.etag);
+        assertEquals(stored.sha256, refreshed.sha256);
+    }
+
+    @Test
+    public void notModifiedFreshnessOverridesStoredHeaders() {
+        CachedResource stored = CachedResource.fromResponse(URL,
+                response(200, "Cache-Control", "max-age=3600"),
+                "body".getBytes(StandardCharsets.UTF_8));
+
+        long before = System.currentTimeMillis();
+        CachedResource refreshed = stored.revalidated(response(304, "Cache-Control", "max-age=60", "ETag", "\"v2\""));
+
+        assertFresh(refreshed, before, 60 * 1000L);
+        assertEquals("\"v2\"", refreshed.etag);
+    }
+
+    @Test
+    public void notModifiedAgeIsSubtractedFromStoredMaxAge() {
+        CachedResource stored = CachedResource.fromResponse(URL,
+                response(200, "Cache-Control", "max-age=3600"),
+                "body".getBytes(StandardCharsets.UTF_8));
+
+        long before = System.currentTimeMillis();
+        CachedResource refreshed = stored.revalidated(response(304, "Age", "600"));
+
+        assertFresh(refreshed, before, HOUR_MS - 600 * 1000L);
+    }
+
+    @Test
+    public void documentKeepsSecurityHeadersWithoutCors() {
+        CachedResource page = CachedResource.fromDocumentResponse("https://www.moely.link/",
+                response(200, "Content-Security-Policy", "default-src 'self'", "X-Frame-Options", "DENY"),
+                "<html></html>".getBytes(StandardCharsets.UTF_8));
+        CachedResource restored = CachedResource.fromMetadata("https://www.moely.link/", page.toMetadata());
+
+        for (CachedResource entry : new CachedResource[] {page, restored}) {
+            assertTrue(entry.headers.document);
+            assertEquals("default-src 'self'", entry.headers.get("Content-Security-Policy"));
+            assertEquals("DENY", entry.headers.get("X-Frame-Options"));
+            assertNull(entry.headers.get("Access-Control-Allow-Origin"));
+        }
+    }
+
+    @Test
+    public void subresourceGetsCorsHeader() {
+        CachedResource stored = CachedResource.fromResponse(URL, response(200), new byte[0]);
+        assertEquals("*", stored.headers.get("Access-Control-Allow-Origin"));
+        assertFalse(stored.headers.document);
+    }
+
+    private static void assertFresh(CachedResource entry, long before, long lifetimeMs) {
+        long after = System.currentTimeMillis();
+        assertTrue(entry.freshUntil >= before + lifetimeMs);
+        assertTrue(entry.freshUntil <= after + lifetimeMs);
+    }
+
+    private static Response response(int code, String... headers) {
+        Response.Builder builder = new Response.Builder()
+                .request(new Request.Builder().url(URL).build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 304 ? "Not Modified" : "OK")
+                .header("Content-Type", "text/css");
+        for (int i = 0; i + 1 < headers.length; i += 2) {
+            builder.header(headers[i], headers[i + 1]);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,204 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class DiskResourceCacheTest {
+
+    private static final int URL_COUNT = 64;
+
+    private File dir;
+    private DiskResourceCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("disk-cache-test").toFile();
+        cache = new DiskResourceCache(dir);
+        cache.open();
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+        deleteRecursively(dir);
+    }
+
+    @Test
+    public void getReturnsWrittenData() {
+        cache.put(url(1), body(1, 100), Collections.singletonMap("k", "v"));
+        ByteBuffer data = cache.get(url(1));
+        assertNotNull(data);
+        assertEquals(100, data.remaining());
+        assertEquals("v", cache.getMetadata(url(1)).get("k"));
+        assertNull(cache.get(url(2)));
+    }
+
+    @Test
+    public void getEntryReturnsDataAndMetadataOfSameWrite() {
+        cache.put(url(1), body(1, 100), Collections.singletonMap("length", "100"));
+        cache.put(url(1), body(1, 300), Collections.singletonMap("length", "300"));
+        DiskResourceCache.Entry entry = cache.getEntry(url(1));
+        assertNotNull(entry);
+        assertEquals("300", entry.metadata.get("length"));
+        assertBody(1, entry.data, 300);
+        assertNull(cache.getEntry(url(2)));
+    }
+
+    @Test
+    public void compactKeepsLatestData() {
+        cache.put(url(1), body(1, 100), Collections.emptyMap());
+        cache.put(url(1), body(1, 300), Collections.emptyMap());
+        cache.put(url(2), body(2, 50), Collections.emptyMap());
+
+        assertEquals(100, cache.compact(0));
+        assertEquals(350, cache.getBlobLength());
+        assertBody(1, cache.get(url(1)), 300);
+        assertBody(2, cache.get(url(2)), 50);
+    }
+
+    @Test
+    public void reopenKeepsDataAndDropsPreallocatedSpace() throws Exception {
+        cache.put(url(1), body(1, 100), Collections.emptyMap());
+        cache.put(url(2), body(2, 200), Collections.emptyMap());
+        cache.close();
+        assertEquals(300, new File(dir, "resources.blob").length());
+
+        cache = new DiskResourceCache(dir);
+        cache.open();
+        assertEquals(300, cache.getBlobLength());
+        assertBody(1, cache.get(url(1)), 100);
+        assertBody(2, cache.get(url(2)), 200);
+        cache.put(url(3), body(3, 50), Collections.emptyMap());
+        assertBody(3, cache.get(url(3)), 50);
+    }
+
+    @Test
+    public void writesBeyondLimitEvictLeastRecentlyUsed() throws Exception {
+        cache.close();
+        cache = new DiskResourceCache(dir, 10_000);
+        cache.open();
+
+        for (int i = 0; i < 8; i++) {
+            cache.put(url(i), body(i, 1000), Collections.emptyMap());
+        }
+        // 最早写入的 0 号最近被读过，不应先被淘汰
+        assertNotNull(cache.get(url(0)));
+        for (int i = 8; i < 20; i++) {
+            cache.put(url(i), body(i, 1000), Collections.emptyMap());
+            assertTrue(cache.getBlobLength() <= 10_000);
+        }
+
+        assertTrue(cache.getEvictionCount() > 0);
+        assertNull(cache.get(url(1)));
+        assertBody(19, cache.get(url(19)), 1000);
+        // 超过上限一半的资源不写入
+        cache.put(url(99), body(99, 6000), Collections.emptyMap());
+        assertNull(cache.get(url(99)));
+    }
+
+    /**
+     * 压缩与读取并发：读到的要么是该 URL 自己的内容，要么未命中，不能是其他资源的数据或抛出异常
+     */
+    @Test
+    public void getDuringCompactNeverReturnsOtherResources() throws Exception {
+        for (int i = 0; i < URL_COUNT; i++) {
+            cache.put(url(i), body(i, lengthFor(i, 0)), Collections.emptyMap());
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    while (running.get()) {
+                        for (int i = 0; i < URL_COUNT; i++) {
+                            ByteBuffer data = cache.get(url(i));
+                            if (data != null) {
+                                assertBody(i, data, -1);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            readers.add(reader);
+            reader.start();
+        }
+
+        try {
+            for (int round = 1; round <= 200 && failure.get() == null; round++) {
+                // 改写一部分资源，长度变化使压缩后的偏移整体移动
+                for (int i = round % 3; i < URL_COUNT; i += 3) {
+                    cache.put(url(i), body(i, lengthFor(i, round)), Collections.emptyMap());
+                }
+                cache.compact(0);
+            }
+        } finally {
+            running.set(false);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError("并发读取失败", failure.get());
+        }
+        for (int i = 0; i < URL_COUNT; i++) {
+            assertNotNull(cache.get(url(i)));
+        }
+    }
+
+    private static String url(int i) {
+        return "https://cdn.example.com/lib/" + i + ".js";
+    }
+
+    private static int lengthFor(int i, int round) {
+        return 64 + (i * 37 + round * 101) % 2000;
+    }
+
+    /**
+     * 每个资源的内容全部是自己的编号，读到其他资源的数据时可以发现
+     */
+    private static byte[] body(int i, int length) {
+        byte[] data = new byte[length];
+        java.util.Arrays.fill(data, (byte) i);
+        return data;
+    }
+
+    private static void assertBody(int i, ByteBuffer data, int expectedLength) {
+        if (expectedLength >= 0) {
+            assertEquals(expectedLength, data.remaining());
+        }
+        assertTrue(data.remaining() > 0);
+        while (data.hasRemaining()) {
+            assertEquals("资源 " + i + " 读到了其他数据", (byte) i, data.get());
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,41 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import org.junit.Test;
+
+public class MainFrameHtmlCacheTest {
+
+    private static String page(String token, String nonce, long time, String text) {
+        return "<html><head><meta name=\"csrf-token\" content=\"" + token + "\">"
+                + "<script nonce=\"" + nonce + "\">var t = " + time + ";</script></head>"
+                + "<body><form><input type=\"hidden\" name=\"_token\" value=\"" + token + "\"></form>"
+                + "<p>" + text + "</p></body></html>";
+    }
+
+    @Test
+    public void fingerprintIgnoresTokensNoncesAndTimestamps() {
+        assertEquals(
+                MainFrameHtmlCache.contentFingerprint(page("a1b2", "n1", 1700000000000L, "hello")),
+                MainFrameHtmlCache.contentFingerprint(page("z9y8", "n2", 1700000099999L, "hello")));
+    }
+
+    @Test
+    public void fingerprintChangesWithContent() {
+        assertNotEquals(
+                MainFrameHtmlCache.contentFingerprint(page("a1b2", "n1", 1700000000000L, "hello")),
+                MainFrameHtmlCache.contentFingerprint(page("a1b2", "n1", 1700000000000L, "world")));
+    }
+
+    @Test
+    public void cookieDigestIgnoresAnalyticsCookiesAndOrder() {
+        assertEquals(
+                MainFrameHtmlCache.relevantCookieDigest("session=abc; _ga=GA1.1; theme=dark"),
+                MainFrameHtmlCache.relevantCookieDigest("theme=dark; session=abc; _ga=GA1.2; _gid=x"));
+        assertEquals("", MainFrameHtmlCache.relevantCookieDigest("_ga=GA1.1; __cf_bm=x"));
+        assertNotEquals(
+                MainFrameHtmlCache.relevantCookieDigest("session=abc"),
+                MainFrameHtmlCache.relevantCookieDigest("session=def"));
+    }
+}
@@ -0,0 +1,51 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class MediaRangeCacheTest {
+
+    @Test
+    public void parsesClosedAndOpenRanges() {
+        assertArrayEquals(new long[]{0, 99}, MediaRangeCache.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, MediaRangeCache.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{10, 20}, MediaRangeCache.parseRange(" bytes= 10 - 20 ", 1000));
+    }
+
+    @Test
+    public void parsesSuffixRange() {
+        assertArrayEquals(new long[]{900, 999}, MediaRangeCache.parseRange("bytes=-100", 1000));
+        // 后缀长度超过总长度时返回整个资源
+        assertArrayEquals(new long[]{0, 999}, MediaRangeCache.parseRange("bytes=-5000", 1000));
+        assertNull(MediaRangeCache.parseRange("bytes=-0", 1000));
+    }
+
+    @Test
+    public void clampsEndPastEof() {
+        assertArrayEquals(new long[]{900, 999}, MediaRangeCache.parseRange("bytes=900-5000", 1000));
+        assertNull(MediaRangeCache.parseRange("bytes=1000-1099", 1000));
+        assertNull(MediaRangeCache.parseRange("bytes=50-10", 1000));
+    }
+
+    @Test
+    public void rejectsMultiRangeAndMalformedHeaders() {
+        assertNull(MediaRangeCache.parseRange("bytes=0-99,200-299", 1000));
+        assertNull(MediaRangeCache.parseRange("items=0-99", 1000));
+        assertNull(MediaRangeCache.parseRange("bytes=abc-", 1000));
+        assertNull(MediaRangeCache.parseRange("bytes=100", 1000));
+        assertNull(MediaRangeCache.parseRange(null, 1000));
+        assertNull(MediaRangeCache.parseRange("bytes=0-99", 0));
+    }
+
+    @Test
+    public void totalFromContentRange() {
+        assertEquals(1000, MediaRangeCache.totalFromContentRange("bytes 0-99/1000"));
+        assertEquals(-1, MediaRangeCache.totalFromContentRange("bytes 0-99/*"));
+        assertEquals(-1, MediaRangeCache.totalFromContentRange("bytes */*"));
+        assertEquals(-1, MediaRangeCache.totalFromContentRange("bytes 0-99"));
+        assertEquals(-1, MediaRangeCache.totalFromContentRange(null));
+    }
+}
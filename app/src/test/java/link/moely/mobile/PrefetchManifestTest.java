@@ -0,0 +1,74 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.Gson;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PrefetchManifestTest {
+
+    // 首屏同步加载的公共库：没有哈希时不会从镜像加载，只能等源站
+    private static final String[] RENDER_BLOCKING_LIBRARIES = {
+            "https://cdnjs.cloudflare.com/ajax/libs/twitter-bootstrap/3.4.0/css/bootstrap.min.css",
+            "https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.7.2/css/all.min.css",
+            "https://cdn.jsdelivr.net/npm/jquery@2.2.3/dist/jquery.min.js",
+            "https://cdnjs.cloudflare.com/ajax/libs/twitter-bootstrap/3.4.0/js/bootstrap.min.js",
+    };
+
+    // 单元测试的工作目录为 app/
+    private static String read(String path) throws IOException {
+        return new String(Files.readAllBytes(Paths.get(path)), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, PrefetchManifest.Entry> bundledEntries() throws IOException {
+        PrefetchManifest manifest = PrefetchManifest.parse(read("src/main/assets/prefetch-manifest.json"));
+        assertNotNull(manifest);
+        Map<String, PrefetchManifest.Entry> entries = new HashMap<>();
+        for (PrefetchManifest.Entry entry : manifest.getEntries()) {
+            entries.put(entry.getUrl(), entry);
+        }
+        return entries;
+    }
+
+    static class Pins {
+        Pin[] assets;
+    }
+
+    static class Pin {
+        String url;
+        String sha256;
+    }
+
+    @Test
+    public void renderBlockingLibrariesArePinned() throws IOException {
+        Map<String, PrefetchManifest.Entry> entries = bundledEntries();
+        for (String url : RENDER_BLOCKING_LIBRARIES) {
+            PrefetchManifest.Entry entry = entries.get(url);
+            assertNotNull("清单中没有 " + url, entry);
+            assertNotNull("没有固定哈希 " + url, entry.getSha256());
+            assertTrue("哈希格式错误 " + url, entry.getSha256().matches("[0-9a-f]{64}"));
+        }
+    }
+
+    @Test
+    public void bundledAssetPinsMatchManifest() throws IOException {
+        // 哈希不一致时内置资源会被标记为过时，首次启动反而要走网络
+        Map<String, PrefetchManifest.Entry> entries = bundledEntries();
+        Pins pins = new Gson().fromJson(read("web-assets.json"), Pins.class);
+        for (Pin pin : pins.assets) {
+            PrefetchManifest.Entry entry = entries.get(pin.url);
+            if (entry == null || entry.getSha256() == null) continue;
+            assertEquals(pin.url, pin.sha256, entry.getSha256());
+        }
+    }
+}
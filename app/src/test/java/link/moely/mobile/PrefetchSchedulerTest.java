@@ -0,0 +1,40 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class PrefetchSchedulerTest {
+
+    @Test
+    public void googleFontsStylesheetIsRenderBlocking() {
+        assertEquals(PrefetchScheduler.PRIORITY_RENDER_BLOCKING, PrefetchScheduler.priorityFor(
+                "https://fonts.loli.net/css?family=Noto+Sans+SC:400,700&display=swap"));
+        assertEquals(PrefetchScheduler.PRIORITY_RENDER_BLOCKING, PrefetchScheduler.priorityFor(
+                "https://fonts.googleapis.com/css2?family=Roboto:wght@400;700|Open+Sans&display=swap"));
+    }
+
+    @Test
+    public void classifiesByExtension() {
+        assertEquals(PrefetchScheduler.PRIORITY_RENDER_BLOCKING,
+                PrefetchScheduler.priorityFor("https://cdn.jsdelivr.net/npm/mdui@1.0.2/dist/css/mdui.min.css?v=2"));
+        assertEquals(PrefetchScheduler.PRIORITY_RENDER_BLOCKING,
+                PrefetchScheduler.priorityFor("https://gstatic.loli.net/s/roboto/v30/KFOmCnqEu92Fr1Mu4mxK.woff2"));
+        assertEquals(PrefetchScheduler.PRIORITY_CRITICAL,
+                PrefetchScheduler.priorityFor("https://cdn.jsdelivr.net/npm/mdui@1.0.2/dist/js/mdui.min.js"));
+    }
+
+    @Test
+    public void otherPathsOnFontHostsAreNotStylesheets() {
+        assertEquals(PrefetchScheduler.PRIORITY_DEFERRED,
+                PrefetchScheduler.priorityFor("https://fonts.googleapis.com/icon-list?family=Material+Icons"));
+        assertEquals(PrefetchScheduler.PRIORITY_DEFERRED,
+                PrefetchScheduler.priorityFor("https://example.com/css?family=Roboto"));
+    }
+
+    @Test
+    public void analyticsAreDeferred() {
+        assertEquals(PrefetchScheduler.PRIORITY_DEFERRED,
+                PrefetchScheduler.priorityFor("https://www.googletagmanager.com/gtag/js?id=G-XXXX"));
+    }
+}
@@ -0,0 +1,79 @@
+package link.moely.mobile;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class UrlCanonicalizerTest {
+
+    private final UrlCanonicalizer canonicalizer = new UrlCanonicalizer();
+
+    @Test
+    public void foldsCaseAndDefaultPort() {
+        assertEquals("https://www.moely.link/Assets/a.css",
+                canonicalizer.canonicalize("HTTPS://WWW.Moely.Link:443/Assets/a.css"));
+        assertEquals("http://www.moely.link/",
+                canonicalizer.canonicalize("http://www.moely.link:80"));
+        // 非默认端口保留
+        assertEquals("https://www.moely.link:8443/a",
+                canonicalizer.canonicalize("https://www.moely.link:8443/a"));
+    }
+
+    @Test
+    public void removesFragment() {
+        assertEquals("https://www.moely.link/page?id=1",
+                canonicalizer.canonicalize("https://www.moely.link/page?id=1#comments"));
+        assertEquals("https://www.moely.link/page",
+                canonicalizer.canonicalize("https://www.moely.link/page#top"));
+    }
+
+    @Test
+    public void removesTrackingParams() {
+        assertEquals("https://www.moely.link/page?id=1",
+                canonicalizer.canonicalize("https://www.moely.link/page?utm_source=x&id=1&fbclid=abc&_ga=2"));
+        assertEquals("https://www.moely.link/page",
+                canonicalizer.canonicalize("https://www.moely.link/page?utm_medium=y&gclid=z"));
+    }
+
+    @Test
+    public void stripsCacheBustersOnlyForVersionedCdnPaths() {
+        assertEquals("https://cdn.jsdelivr.net/npm/jquery@2.2.3/dist/jquery.min.js",
+                canonicalizer.canonicalize("https://cdn.jsdelivr.net/npm/jquery@2.2.3/dist/jquery.min.js?v=123"));
+        assertEquals("https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.7.2/css/all.min.css",
+                canonicalizer.canonicalize("https://cdnjs.cloudflare.com/ajax/libs/font-awesome/6.7.2/css/all.min.css?t=1"));
+        // 只有主版本号或没有版本号时内容会变化，参数保留
+        assertEquals("https://cdn.jsdelivr.net/npm/@algolia/algoliasearch-netlify-frontend@1/dist/a.js?v=2",
+                canonicalizer.canonicalize("https://cdn.jsdelivr.net/npm/@algolia/algoliasearch-netlify-frontend@1/dist/a.js?v=2"));
+        assertEquals("https://cdn.jsdelivr.net/gh/user/repo/a.js?t=5",
+                canonicalizer.canonicalize("https://cdn.jsdelivr.net/gh/user/repo/a.js?t=5"));
+        // 其他源站不受影响
+        assertEquals("https://www.moely.link/lib/1.2.3/a.js?v=9",
+                canonicalizer.canonicalize("https://www.moely.link/lib/1.2.3/a.js?v=9"));
+    }
+
+    @Test
+    public void appliesPerHostIgnoredParams() {
+        canonicalizer.setIgnoredParams("WWW.Moely.Link", Arrays.asList("v", "t"));
+        assertEquals("https://www.moely.link/assets/js/login.js?lang=zh",
+                canonicalizer.canonicalize("https://www.moely.link/assets/js/login.js?v=3&lang=zh&t=99"));
+        canonicalizer.setIgnoredParams("www.moely.link", Collections.emptyList());
+        assertEquals("https://www.moely.link/assets/js/login.js?lang=zh&v=3",
+                canonicalizer.canonicalize("https://www.moely.link/assets/js/login.js?v=3&lang=zh"));
+    }
+
+    @Test
+    public void sortsParamsStablyByName() {
+        assertEquals("https://www.moely.link/s?a=1&tag=b&tag=a&z=0",
+                canonicalizer.canonicalize("https://www.moely.link/s?z=0&tag=b&a=1&tag=a"));
+        assertEquals(canonicalizer.canonicalize("https://www.moely.link/s?b=2&a=1"),
+                canonicalizer.canonicalize("https://www.moely.link/s?a=1&b=2"));
+    }
+
+    @Test
+    public void leavesNonHttpUrlsUntouched() {
+        assertEquals("data:image/png;base64,AAAA#x", canonicalizer.canonicalize("data:image/png;base64,AAAA#x"));
+    }
+}